@@ -0,0 +1,102 @@
+package software.level.udacity.popularmovies2.api;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Measures how many poster decodes allocate a new bitmap when every decoded poster is returned to
+ * the {@link BitmapPool}, the way the grid releases posters that scroll out of view.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DecodeImageFileTest {
+
+    // Size of a w342 poster
+    private static final int POSTER_WIDTH = 342;
+    private static final int POSTER_HEIGHT = 513;
+
+    private static final int DECODES = 50;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        BitmapPool.clear();
+
+        Bitmap poster = Bitmap.createBitmap(POSTER_WIDTH, POSTER_HEIGHT, Bitmap.Config.ARGB_8888);
+        poster.eraseColor(Color.RED);
+
+        file = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "poster.jpg");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            poster.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        BitmapPool.clear();
+        file.delete();
+    }
+
+    @Test
+    public void pooledPostersAreDecodedWithoutAllocating() {
+        int allocations = BitmapPool.getAllocationCount();
+        int reuses = BitmapPool.getReuseCount();
+
+        Bitmap previous = null;
+        for(int i = 0; i < DECODES; i++) {
+            Bitmap bitmap = MovieServiceUtils.decodeImageFile(file, POSTER_WIDTH, POSTER_HEIGHT);
+
+            assertNotNull(bitmap);
+            if(previous != null) {
+                assertSame(previous, bitmap);
+            }
+
+            BitmapPool.put(bitmap);
+            previous = bitmap;
+        }
+
+        assertEquals(1, BitmapPool.getAllocationCount() - allocations);
+        assertEquals(DECODES - 1, BitmapPool.getReuseCount() - reuses);
+    }
+
+    @Test
+    public void postersAreAllocatedWithoutPool() {
+        int allocations = BitmapPool.getAllocationCount();
+        int reuses = BitmapPool.getReuseCount();
+
+        for(int i = 0; i < DECODES; i++) {
+            assertNotNull(MovieServiceUtils.decodeImageFile(file, POSTER_WIDTH, POSTER_HEIGHT));
+        }
+
+        assertEquals(DECODES, BitmapPool.getAllocationCount() - allocations);
+        assertEquals(0, BitmapPool.getReuseCount() - reuses);
+    }
+
+    @Test
+    public void missingFileIsNotCounted() {
+        int allocations = BitmapPool.getAllocationCount();
+
+        assertNull(MovieServiceUtils.decodeImageFile(new File(file.getPath() + ".missing"),
+                POSTER_WIDTH, POSTER_HEIGHT));
+
+        assertEquals(allocations, BitmapPool.getAllocationCount());
+    }
+}
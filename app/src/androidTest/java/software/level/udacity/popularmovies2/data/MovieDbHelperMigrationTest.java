@@ -0,0 +1,286 @@
+package software.level.udacity.popularmovies2.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import software.level.udacity.popularmovies2.data.MovieContract.MovieCategoryEntry;
+import software.level.udacity.popularmovies2.data.MovieContract.MovieFavoriteEntry;
+import software.level.udacity.popularmovies2.data.MovieContract.MovieSearchEntry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Creates databases the way earlier versions of the app left them, upgrades them to the current
+ * version and checks that the favorites, their posters, their added times and the stored lists
+ * survive every migration.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MovieDbHelperMigrationTest {
+
+    private static final String TEST_DATABASE = "movies-migration-test.db";
+
+    private static final byte[] POSTER = new byte[]{(byte) 0xff, (byte) 0xd8, 1, 2, 3, 4, 5};
+
+    private Context context;
+    private MovieDbHelper helper;
+
+    // Posters the migrations moved to the store, removed again after each test
+    private final List<String> storedPosters = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(TEST_DATABASE);
+
+        PosterStore.initializePosterStore(context);
+    }
+
+    @After
+    public void tearDown() {
+        if(helper != null) {
+            helper.close();
+        }
+        context.deleteDatabase(TEST_DATABASE);
+
+        for(String hash : storedPosters) {
+            PosterStore.getInstance().remove(hash);
+        }
+    }
+
+    @Test
+    public void upgradeFromVersion2KeepsFavoritesAndPosters() throws IOException {
+        SQLiteDatabase v2 = open(2);
+        v2.insert(MovieFavoriteEntry.TABLE_NAME, null, favoriteV2(550, "Fight Club", POSTER));
+        v2.insert(MovieFavoriteEntry.TABLE_NAME, null, favoriteV2(13, "Forrest Gump", null));
+        close();
+
+        SQLiteDatabase db = open(MovieDbHelper.DATABASE_VERSION);
+
+        Cursor cursor = db.query(MovieFavoriteEntry.TABLE_NAME, null, null, null, null, null,
+                MovieFavoriteEntry.COLUMN_MOVIEID);
+        try {
+            assertEquals(2, cursor.getCount());
+
+            cursor.moveToFirst();
+            assertEquals(13, getInt(cursor, MovieFavoriteEntry.COLUMN_MOVIEID));
+            assertEquals("Forrest Gump", getString(cursor, MovieFavoriteEntry.COLUMN_TITLE));
+            assertNull(getString(cursor, MovieFavoriteEntry.COLUMN_POSTER_HASH));
+            assertEquals(0, getLong(cursor, MovieFavoriteEntry.COLUMN_ADDED_AT));
+
+            cursor.moveToNext();
+            assertEquals(550, getInt(cursor, MovieFavoriteEntry.COLUMN_MOVIEID));
+            assertEquals("Fight Club", getString(cursor, MovieFavoriteEntry.COLUMN_TITLE));
+            assertEquals("Overview of Fight Club", getString(cursor, MovieFavoriteEntry.COLUMN_OVERVIEW));
+            assertEquals("1999-10-15", getString(cursor, MovieFavoriteEntry.COLUMN_RELEASEDATE));
+            assertEquals("/fight-club.jpg", getString(cursor, MovieFavoriteEntry.COLUMN_POSTERPATH));
+            assertEquals(8.3, cursor.getDouble(cursor.getColumnIndexOrThrow(MovieFavoriteEntry.COLUMN_RATING)), 0);
+            assertEquals(0, getLong(cursor, MovieFavoriteEntry.COLUMN_ADDED_AT));
+
+            // The poster moved to the store under the hash of its bytes
+            String hash = getString(cursor, MovieFavoriteEntry.COLUMN_POSTER_HASH);
+            storedPosters.add(hash);
+
+            assertEquals(PosterStore.computeHash(POSTER), hash);
+            assertArrayEquals(POSTER, readFile(PosterStore.getInstance().getFile(hash)));
+        } finally {
+            cursor.close();
+        }
+
+        // The rebuild dropped the row id and the poster column
+        List<String> columns = getColumns(db, MovieFavoriteEntry.TABLE_NAME);
+        assertFalse(columns.contains("_id"));
+        assertFalse(columns.contains(MovieFavoriteEntry.COLUMN_POSTER));
+
+        // Favorites that existed before the search index were added to it
+        assertEquals(550, searchFavorites(db, "fight*"));
+        assertEquals(13, searchFavorites(db, "gump*"));
+    }
+
+    @Test
+    public void upgradeFromVersion6KeepsAddedTimesAndIndexesStoredMovies() {
+        SQLiteDatabase v6 = open(6);
+
+        ContentValues favorite = favoriteV5(550, "Fight Club");
+        favorite.put(MovieFavoriteEntry.COLUMN_ADDED_AT, 1000L);
+        v6.insert(MovieFavoriteEntry.TABLE_NAME, null, favorite);
+
+        favorite = favoriteV5(13, "Forrest Gump");
+        favorite.put(MovieFavoriteEntry.COLUMN_ADDED_AT, 2000L);
+        v6.insert(MovieFavoriteEntry.TABLE_NAME, null, favorite);
+
+        v6.insert(MovieCategoryEntry.TABLE_NAME, null, categoryMovie(278, "The Shawshank Redemption"));
+        close();
+
+        SQLiteDatabase db = open(MovieDbHelper.DATABASE_VERSION);
+
+        Cursor cursor = db.query(MovieFavoriteEntry.TABLE_NAME,
+                new String[]{MovieFavoriteEntry.COLUMN_MOVIEID, MovieFavoriteEntry.COLUMN_ADDED_AT},
+                null, null, null, null, MovieFavoriteEntry.SORT_ORDER);
+        try {
+            assertEquals(2, cursor.getCount());
+
+            cursor.moveToFirst();
+            assertEquals(13, cursor.getInt(0));
+            assertEquals(2000L, cursor.getLong(1));
+
+            cursor.moveToNext();
+            assertEquals(550, cursor.getInt(0));
+            assertEquals(1000L, cursor.getLong(1));
+        } finally {
+            cursor.close();
+        }
+
+        assertEquals(550, searchFavorites(db, "fight*"));
+
+        Cursor stored = db.rawQuery("SELECT " + MovieCategoryEntry.COLUMN_MOVIEID +
+                " FROM " + MovieCategoryEntry.TABLE_NAME + " WHERE " + MovieCategoryEntry._ID +
+                " IN (SELECT docid FROM " + MovieSearchEntry.CATEGORY_TABLE_NAME +
+                " WHERE " + MovieSearchEntry.CATEGORY_TABLE_NAME + " MATCH ?)", new String[]{"shawshank*"});
+        try {
+            assertTrue(stored.moveToFirst());
+            assertEquals(278, stored.getInt(0));
+        } finally {
+            stored.close();
+        }
+    }
+
+    @Test
+    public void newDatabaseMatchesUpgradedDatabase() {
+        SQLiteDatabase v2 = open(2);
+        List<String> v2Columns = getColumns(v2, MovieFavoriteEntry.TABLE_NAME);
+        assertTrue(v2Columns.contains("_id"));
+        close();
+
+        List<String> upgraded = getColumns(open(MovieDbHelper.DATABASE_VERSION), MovieFavoriteEntry.TABLE_NAME);
+        close();
+
+        context.deleteDatabase(TEST_DATABASE);
+        List<String> created = getColumns(open(MovieDbHelper.DATABASE_VERSION), MovieFavoriteEntry.TABLE_NAME);
+
+        assertEquals(upgraded, created);
+    }
+
+    private SQLiteDatabase open(int version) {
+        helper = new MovieDbHelper(context, TEST_DATABASE, version);
+        return helper.getWritableDatabase();
+    }
+
+    private void close() {
+        helper.close();
+        helper = null;
+    }
+
+    private static ContentValues favoriteV2(int movieId, String title, byte[] poster) {
+        ContentValues values = favoriteV5(movieId, title);
+        values.remove(MovieFavoriteEntry.COLUMN_POSTER_HASH);
+
+        if(poster != null) {
+            values.put(MovieFavoriteEntry.COLUMN_POSTER, poster);
+        }
+        return values;
+    }
+
+    private static ContentValues favoriteV5(int movieId, String title) {
+        ContentValues values = new ContentValues();
+        values.put(MovieFavoriteEntry.COLUMN_MOVIEID, movieId);
+        values.put(MovieFavoriteEntry.COLUMN_TITLE, title);
+        values.put(MovieFavoriteEntry.COLUMN_OVERVIEW, "Overview of " + title);
+        values.put(MovieFavoriteEntry.COLUMN_RELEASEDATE, "1999-10-15");
+        values.put(MovieFavoriteEntry.COLUMN_POSTERPATH, "/fight-club.jpg");
+        values.put(MovieFavoriteEntry.COLUMN_RATING, 8.3);
+        return values;
+    }
+
+    private static ContentValues categoryMovie(int movieId, String title) {
+        ContentValues values = new ContentValues();
+        values.put(MovieCategoryEntry.COLUMN_CATEGORY, MovieCategoryEntry.CATEGORY_POPULAR);
+        values.put(MovieCategoryEntry.COLUMN_PAGE, 1);
+        values.put(MovieCategoryEntry.COLUMN_RANK, 0);
+        values.put(MovieCategoryEntry.COLUMN_TOTAL_PAGES, 1);
+        values.put(MovieCategoryEntry.COLUMN_FETCHED_AT, 1000L);
+        values.put(MovieCategoryEntry.COLUMN_MOVIEID, movieId);
+        values.put(MovieCategoryEntry.COLUMN_TITLE, title);
+        return values;
+    }
+
+    /**
+     * @return Movie id of the only favorite that matches the query
+     */
+    private static int searchFavorites(SQLiteDatabase db, String match) {
+        Cursor cursor = db.rawQuery("SELECT docid FROM " + MovieSearchEntry.FAVORITES_TABLE_NAME +
+                " WHERE " + MovieSearchEntry.FAVORITES_TABLE_NAME + " MATCH ?", new String[]{match});
+        try {
+            assertEquals(1, cursor.getCount());
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static List<String> getColumns(SQLiteDatabase db, String table) {
+        List<String> columns = new ArrayList<>();
+
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            while(cursor.moveToNext()) {
+                columns.add(cursor.getString(cursor.getColumnIndexOrThrow("name")));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return columns;
+    }
+
+    private static int getInt(Cursor cursor, String column) {
+        return cursor.getInt(cursor.getColumnIndexOrThrow(column));
+    }
+
+    private static long getLong(Cursor cursor, String column) {
+        return cursor.getLong(cursor.getColumnIndexOrThrow(column));
+    }
+
+    private static String getString(Cursor cursor, String column) {
+        return cursor.getString(cursor.getColumnIndexOrThrow(column));
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while(read < data.length) {
+                int count = in.read(data, read, data.length - read);
+                if(count == -1) {
+                    break;
+                }
+                read += count;
+            }
+        } finally {
+            in.close();
+        }
+
+        return data;
+    }
+}
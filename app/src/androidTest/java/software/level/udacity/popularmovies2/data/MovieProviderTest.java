@@ -0,0 +1,370 @@
+package software.level.udacity.popularmovies2.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.content.pm.ProviderInfo;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.RenamingDelegatingContext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import software.level.udacity.popularmovies2.data.MovieContract.MovieCategoryEntry;
+import software.level.udacity.popularmovies2.data.MovieContract.MovieFavoriteEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the provider against a database of its own and checks that batches are written in a
+ * single transaction: everything or nothing is stored, and change notifications are only sent
+ * once the transaction has committed. Also checks that pages of favorites continue exactly after
+ * the last favorite of the previous page, also when several favorites were added at the same time.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MovieProviderTest {
+
+    // Notified after each operation, every notification sent before it has been delivered once it arrives
+    private static final Uri SENTINEL_URI = MovieContract.BASE_CONTENT_URI.buildUpon()
+            .appendPath("sentinel")
+            .build();
+
+    private Context context;
+    private MovieProvider provider;
+
+    private HandlerThread observerThread;
+    private NotificationRecorder recorder;
+
+    @Before
+    public void setUp() {
+        // Database files get a prefix so the app's own database is left alone
+        context = new RenamingDelegatingContext(InstrumentationRegistry.getTargetContext(), "test.");
+        context.deleteDatabase(MovieDbHelper.DATABASE_NAME);
+
+        ProviderInfo info = new ProviderInfo();
+        info.authority = MovieContract.CONTENT_AUTHORITY;
+
+        provider = new MovieProvider();
+        provider.attachInfo(context, info);
+
+        observerThread = new HandlerThread("MovieProviderTest");
+        observerThread.start();
+
+        recorder = new NotificationRecorder(new Handler(observerThread.getLooper()));
+        context.getContentResolver().registerContentObserver(MovieContract.BASE_CONTENT_URI, true, recorder);
+    }
+
+    @After
+    public void tearDown() {
+        context.getContentResolver().unregisterContentObserver(recorder);
+        observerThread.quit();
+
+        provider.shutdown();
+        context.deleteDatabase(MovieDbHelper.DATABASE_NAME);
+    }
+
+    @Test
+    public void applyBatchWritesEveryOperation() throws Exception {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(insertFavorite(favorite(550, 1000)));
+        operations.add(insertFavorite(favorite(13, 2000)));
+        operations.add(ContentProviderOperation.newUpdate(favoriteUri(550))
+                .withValue(MovieFavoriteEntry.COLUMN_TITLE, "Fight Club")
+                .withExpectedCount(1)
+                .build());
+
+        ContentProviderResult[] results = provider.applyBatch(operations);
+
+        assertEquals(3, results.length);
+        assertEquals(favoriteUri(550), results[0].uri);
+        assertEquals(Integer.valueOf(1), results[2].count);
+
+        assertEquals(Arrays.asList(13, 550), queryFavoriteIds(MovieFavoriteEntry.CONTENT_URI));
+        assertEquals("Fight Club", queryTitle(550));
+
+        // Several changed favorites are reported as one change to all favorites, sent once
+        assertEquals(Collections.singletonList(MovieFavoriteEntry.CONTENT_URI), recorder.awaitNotifications());
+    }
+
+    @Test
+    public void applyBatchWithSingleFavoriteKeepsItsUri() throws Exception {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(insertFavorite(favorite(550, 1000)));
+        operations.add(ContentProviderOperation.newUpdate(favoriteUri(550))
+                .withValue(MovieFavoriteEntry.COLUMN_TITLE, "Fight Club")
+                .build());
+
+        provider.applyBatch(operations);
+
+        assertEquals(Collections.singletonList(favoriteUri(550)), recorder.awaitNotifications());
+    }
+
+    @Test
+    public void failedOperationRollsBackTheBatch() throws Exception {
+        provider.insert(MovieFavoriteEntry.CONTENT_URI, favorite(13, 500));
+        recorder.awaitNotifications();
+
+        byte[] poster = ("poster of a rolled back favorite " + System.nanoTime()).getBytes("UTF-8");
+        ContentValues withPoster = favorite(550, 1000);
+        withPoster.put(MovieFavoriteEntry.COLUMN_POSTER, poster);
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(insertFavorite(withPoster));
+        operations.add(ContentProviderOperation.newDelete(favoriteUri(13)).build());
+        // No favorite 278 exists, so the expected count fails the batch
+        operations.add(ContentProviderOperation.newUpdate(favoriteUri(278))
+                .withValue(MovieFavoriteEntry.COLUMN_TITLE, "The Shawshank Redemption")
+                .withExpectedCount(1)
+                .build());
+
+        try {
+            provider.applyBatch(operations);
+            fail("Batch with a failing operation was applied");
+        } catch(OperationApplicationException e) {
+            // Expected
+        }
+
+        // Neither the insert nor the delete before the failure were kept
+        assertEquals(Collections.singletonList(13), queryFavoriteIds(MovieFavoriteEntry.CONTENT_URI));
+        assertTrue(recorder.awaitNotifications().isEmpty());
+
+        // The poster written for the rolled back insert is removed again
+        assertFalse(PosterStore.getInstance().contains(PosterStore.computeHash(poster)));
+    }
+
+    @Test
+    public void bulkInsertOfFavoritesNotifiesOnce() {
+        ContentValues[] values = {favorite(550, 1000), favorite(13, 2000), favorite(278, 3000)};
+
+        assertEquals(3, provider.bulkInsert(MovieFavoriteEntry.CONTENT_URI, values));
+
+        assertEquals(Arrays.asList(278, 13, 550), queryFavoriteIds(MovieFavoriteEntry.CONTENT_URI));
+        assertEquals(Collections.singletonList(MovieFavoriteEntry.CONTENT_URI), recorder.awaitNotifications());
+    }
+
+    @Test
+    public void firstCategoryPageReplacesStoredList() {
+        Uri uri = MovieCategoryEntry.buildCategoryUri(MovieCategoryEntry.CATEGORY_POPULAR);
+
+        ContentValues[] first = {categoryMovie(1, 0, 550), categoryMovie(1, 1, 13)};
+        ContentValues[] second = {categoryMovie(2, 0, 278)};
+        provider.bulkInsert(uri, first);
+        provider.bulkInsert(uri, second);
+        recorder.awaitNotifications();
+
+        ContentValues[] refreshed = {categoryMovie(1, 0, 680)};
+        assertEquals(1, provider.bulkInsert(uri, refreshed));
+
+        assertEquals(Collections.singletonList(680), queryCategoryIds(uri));
+        assertEquals(Collections.singletonList(uri), recorder.awaitNotifications());
+
+        // The caller's values are not changed by the insert
+        assertFalse(refreshed[0].containsKey(MovieCategoryEntry.COLUMN_CATEGORY));
+    }
+
+    @Test
+    public void pagesFollowSortOrderAcrossAddedAtTies() {
+        insertFavorites();
+
+        // Pages of two end inside the run of favorites added at the same time
+        List<Integer> first = queryFavoriteIds(MovieFavoriteEntry.buildPageUri(2));
+        List<Integer> second = queryFavoriteIds(MovieFavoriteEntry.buildPageUri(2, 200, 4));
+        List<Integer> third = queryFavoriteIds(MovieFavoriteEntry.buildPageUri(2, 200, 2));
+        List<Integer> last = queryFavoriteIds(MovieFavoriteEntry.buildPageUri(2, 50, 6));
+
+        assertEquals(Arrays.asList(5, 4), first);
+        assertEquals(Arrays.asList(3, 2), second);
+        assertEquals(Arrays.asList(1, 6), third);
+        assertTrue(last.isEmpty());
+
+        // Together the pages hold every favorite once, in the order of a single query
+        List<Integer> paged = new ArrayList<>();
+        paged.addAll(first);
+        paged.addAll(second);
+        paged.addAll(third);
+        assertEquals(queryFavoriteIds(MovieFavoriteEntry.CONTENT_URI), paged);
+    }
+
+    @Test
+    public void pageStartsAfterLastFavoriteOfTie() {
+        insertFavorites();
+
+        // The last favorite of the previous page was the last one added at 200
+        assertEquals(Arrays.asList(1, 6), queryFavoriteIds(MovieFavoriteEntry.buildPageUri(10, 200, 2)));
+
+        // The favorite that ended the previous page was removed in the meantime
+        provider.delete(favoriteUri(4), null, null);
+        assertEquals(Arrays.asList(3, 2, 1, 6), queryFavoriteIds(MovieFavoriteEntry.buildPageUri(10, 200, 4)));
+    }
+
+    @Test
+    public void newerFavoriteDoesNotShiftLaterPages() {
+        insertFavorites();
+
+        List<Integer> first = queryFavoriteIds(MovieFavoriteEntry.buildPageUri(3));
+        assertEquals(Arrays.asList(5, 4, 3), first);
+
+        // Added while the user scrolls, it sorts before the pages already read
+        provider.insert(MovieFavoriteEntry.CONTENT_URI, favorite(7, 400));
+
+        assertEquals(Arrays.asList(2, 1, 6), queryFavoriteIds(MovieFavoriteEntry.buildPageUri(3, 200, 3)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pagesRequireDefaultSortOrder() {
+        provider.query(MovieFavoriteEntry.buildPageUri(2, 200, 4), null, null, null,
+                MovieFavoriteEntry.COLUMN_TITLE);
+    }
+
+    private static ContentProviderOperation insertFavorite(ContentValues values) {
+        return ContentProviderOperation.newInsert(MovieFavoriteEntry.CONTENT_URI)
+                .withValues(values)
+                .build();
+    }
+
+    /**
+     * Stores favorites whose sort order is 5, 4, 3, 2, 1, 6, three of them added at the same time.
+     */
+    private void insertFavorites() {
+        provider.bulkInsert(MovieFavoriteEntry.CONTENT_URI, new ContentValues[]{
+                favorite(1, 100),
+                favorite(2, 200),
+                favorite(3, 200),
+                favorite(4, 200),
+                favorite(5, 300),
+                favorite(6, 50)});
+    }
+
+    private static Uri favoriteUri(int movieId) {
+        return MovieFavoriteEntry.CONTENT_URI.buildUpon()
+                .appendPath(String.valueOf(movieId))
+                .build();
+    }
+
+    private static ContentValues favorite(int movieId, long addedAt) {
+        ContentValues values = new ContentValues();
+        values.put(MovieFavoriteEntry.COLUMN_MOVIEID, movieId);
+        values.put(MovieFavoriteEntry.COLUMN_TITLE, "Movie " + movieId);
+        values.put(MovieFavoriteEntry.COLUMN_ADDED_AT, addedAt);
+        return values;
+    }
+
+    private static ContentValues categoryMovie(int page, int rank, int movieId) {
+        ContentValues values = new ContentValues();
+        values.put(MovieCategoryEntry.COLUMN_PAGE, page);
+        values.put(MovieCategoryEntry.COLUMN_RANK, rank);
+        values.put(MovieCategoryEntry.COLUMN_TOTAL_PAGES, 2);
+        values.put(MovieCategoryEntry.COLUMN_FETCHED_AT, System.currentTimeMillis());
+        values.put(MovieCategoryEntry.COLUMN_MOVIEID, movieId);
+        values.put(MovieCategoryEntry.COLUMN_TITLE, "Movie " + movieId);
+        return values;
+    }
+
+    private List<Integer> queryFavoriteIds(Uri uri) {
+        return queryIds(uri, MovieFavoriteEntry.COLUMN_MOVIEID);
+    }
+
+    private List<Integer> queryCategoryIds(Uri uri) {
+        return queryIds(uri, MovieCategoryEntry.COLUMN_MOVIEID);
+    }
+
+    private List<Integer> queryIds(Uri uri, String column) {
+        List<Integer> ids = new ArrayList<>();
+
+        Cursor cursor = provider.query(uri, new String[]{column}, null, null, null);
+        try {
+            while(cursor.moveToNext()) {
+                ids.add(cursor.getInt(0));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return ids;
+    }
+
+    private String queryTitle(int movieId) {
+        Cursor cursor = provider.query(favoriteUri(movieId),
+                new String[]{MovieFavoriteEntry.COLUMN_TITLE}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Records the uris notified under the base content uri.
+     */
+    private class NotificationRecorder extends ContentObserver {
+
+        private final List<Uri> uris = new ArrayList<>();
+        private CountDownLatch sentinel;
+
+        NotificationRecorder(Handler handler) {
+            super(handler);
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public synchronized void onChange(boolean selfChange, Uri uri) {
+            if(SENTINEL_URI.equals(uri)) {
+                sentinel.countDown();
+            } else {
+                uris.add(uri);
+            }
+        }
+
+        /**
+         * Waits until every notification sent so far has been delivered.
+         *
+         * @return Uris notified since the last call, in the order they were notified
+         */
+        List<Uri> awaitNotifications() {
+            CountDownLatch latch = new CountDownLatch(1);
+            synchronized(this) {
+                sentinel = latch;
+            }
+
+            // Notifications reach an observer in the order they were sent
+            context.getContentResolver().notifyChange(SENTINEL_URI, null);
+
+            try {
+                assertTrue("Notifications were not delivered", latch.await(5, TimeUnit.SECONDS));
+            } catch(InterruptedException e) {
+                throw new AssertionError(e);
+            }
+
+            synchronized(this) {
+                List<Uri> notified = new ArrayList<>(uris);
+                uris.clear();
+                return notified;
+            }
+        }
+    }
+}
@@ -4,7 +4,9 @@ import android.app.Application;
 
 import com.facebook.stetho.Stetho;
 
+import software.level.udacity.popularmovies2.api.ImagePipeline;
 import software.level.udacity.popularmovies2.api.NetworkManager;
+import software.level.udacity.popularmovies2.ui.PosterCache;
 import software.level.udacity.popularmovies2.ui.PresenterManager;
 
 
@@ -15,7 +17,10 @@ public class MovieApplication extends Application {
         super.onCreate();
 
         // Create the network manager singleton object
-        NetworkManager.initializeNetworkManager();
+        NetworkManager.initializeNetworkManager(this);
+
+        // Configure Picasso to download through the shared client, must follow the network manager
+        ImagePipeline.initializeImagePipeline(this);
 
         // Create the presenter manager singleton object
         PresenterManager.initializePresenterManager();
@@ -26,4 +31,16 @@ public class MovieApplication extends Application {
         }
     }
 
+    /**
+     * Gives memory held by the decoded poster cache back when the system asks for it.
+     *
+     * @param level Memory trim level
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        PosterCache.trimMemory(level);
+    }
+
 }
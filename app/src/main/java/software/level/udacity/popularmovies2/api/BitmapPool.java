@@ -0,0 +1,129 @@
+package software.level.udacity.popularmovies2.api;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pool of bitmaps that are no longer displayed, so poster decodes can reuse their memory through
+ * {@link android.graphics.BitmapFactory.Options#inBitmap} instead of allocating a new bitmap.
+ *
+ * Bitmaps are bucketed by width, height and config. Posters of the same source size decode to the
+ * same dimensions, so an exact match is almost always available while scrolling and the reuse
+ * rules of every API level are met. The pool is bounded in bytes, bitmaps that do not fit are
+ * left to the garbage collector.
+ *
+ * A bitmap must only be put in the pool once nothing displays it anymore.
+ */
+public class BitmapPool {
+
+    // Share of the maximum heap the pooled bitmaps may use
+    private static final int HEAP_FRACTION = 16;
+
+    private static final long maxBytes = Runtime.getRuntime().maxMemory() / HEAP_FRACTION;
+
+    private static final Map<String, ArrayDeque<Bitmap>> buckets = new HashMap<>();
+    private static long currentBytes;
+
+    // Number of decodes that allocated a new bitmap and that reused a pooled one
+    private static int allocationCount;
+    private static int reuseCount;
+
+    private BitmapPool() {}
+
+    /**
+     * Returns a pooled bitmap that can be decoded into, removing it from the pool.
+     *
+     * @param width Width of the decoded image
+     * @param height Height of the decoded image
+     * @param config Config of the decoded image
+     * @return Bitmap to pass as inBitmap or null if there is none
+     */
+    public static synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        ArrayDeque<Bitmap> bucket = buckets.get(getKey(width, height, config));
+
+        if(bucket == null || bucket.isEmpty()) {
+            return null;
+        }
+
+        Bitmap bitmap = bucket.pop();
+        currentBytes -= getBytes(bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Offers a bitmap that is no longer displayed for reuse.
+     *
+     * @param bitmap Bitmap that nothing references anymore
+     */
+    public static synchronized void put(Bitmap bitmap) {
+        if(bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+
+        long bytes = getBytes(bitmap);
+        if(currentBytes + bytes > maxBytes) {
+            return;
+        }
+
+        String key = getKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+
+        ArrayDeque<Bitmap> bucket = buckets.get(key);
+        if(bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(key, bucket);
+        }
+
+        bucket.push(bitmap);
+        currentBytes += bytes;
+    }
+
+    /**
+     * Removes every bitmap from the pool.
+     */
+    public static synchronized void clear() {
+        buckets.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * Records whether a decode reused a pooled bitmap.
+     *
+     * @param reused True if the decode went into a pooled bitmap
+     */
+    public static synchronized void recordDecode(boolean reused) {
+        if(reused) {
+            reuseCount++;
+        } else {
+            allocationCount++;
+        }
+    }
+
+    /**
+     * @return Number of decodes that had to allocate a new bitmap
+     */
+    public static synchronized int getAllocationCount() {
+        return allocationCount;
+    }
+
+    /**
+     * @return Number of decodes that reused a pooled bitmap
+     */
+    public static synchronized int getReuseCount() {
+        return reuseCount;
+    }
+
+    private static String getKey(int width, int height, Bitmap.Config config) {
+        return width + "x" + height + ":" + config;
+    }
+
+    private static long getBytes(Bitmap bitmap) {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+}
@@ -0,0 +1,235 @@
+package software.level.udacity.popularmovies2.api;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.CacheControl;
+import okhttp3.Callback;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Applies a cache policy to each of the Movie Database endpoints.
+ *
+ * Cached responses are served immediately as long as they are no more than the stale window past
+ * the max age of the endpoint. If the cached response is older than the max age it is still
+ * returned but a request is made in the background to refresh the cache (stale-while-revalidate).
+ * When the network is not available any cached response is used regardless of age.
+ *
+ * The Movie Database does not send cache headers that fit this model, so the network interceptor
+ * returned by {@link #getNetworkInterceptor()} rewrites them before the response is cached.
+ */
+public class CachePolicyInterceptor implements Interceptor {
+
+    public static final String TAG = CachePolicyInterceptor.class.getSimpleName();
+
+    // Warning header OkHttp attaches to cached responses that are past their max age
+    private static final String WARNING_STALE = "110";
+
+    // Details are fresh for this long, shared with the MovieDetailsCache
+    static final long DETAIL_MAX_AGE_SECONDS = TimeUnit.DAYS.toSeconds(1);
+
+    // Movie lists change a few times a day, trailers and reviews rarely change
+    private static final CachePolicy POLICY_LIST = new CachePolicy(
+            TimeUnit.MINUTES.toSeconds(30), TimeUnit.DAYS.toSeconds(1));
+    private static final CachePolicy POLICY_DETAIL = new CachePolicy(
+            DETAIL_MAX_AGE_SECONDS, TimeUnit.DAYS.toSeconds(7));
+
+    private OkHttpClient client;
+
+    // URLs that currently have a background revalidation in flight
+    private final Set<String> revalidating = new HashSet<>();
+
+    /**
+     * Sets the client used to revalidate stale responses. This has to be the client the
+     * interceptor is installed in so the refreshed response ends up in the same cache.
+     *
+     * @param client OkHttpClient that uses this interceptor
+     */
+    public void setClient(OkHttpClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        CachePolicy policy = getPolicy(request);
+
+        // Requests that explicitly ask for network or cache only are passed through untouched
+        if(policy == null || request.cacheControl().noCache() || request.cacheControl().onlyIfCached()) {
+            return chain.proceed(request);
+        }
+
+        // Try the cache first, accepting responses up to the end of the stale window
+        Response cached = chain.proceed(request.newBuilder()
+                .cacheControl(new CacheControl.Builder()
+                        .onlyIfCached()
+                        .maxStale((int) policy.staleSeconds, TimeUnit.SECONDS)
+                        .build())
+                .build());
+
+        if(cached.isSuccessful()) {
+            String warning = cached.header("Warning");
+            if(warning != null && warning.startsWith(WARNING_STALE)) {
+                revalidate(request);
+            }
+            return cached;
+        }
+        cached.body().close();
+
+        try {
+            return chain.proceed(request);
+        } catch (IOException e) {
+            // Fall back to a cached response of any age if the network request fails
+            Response offline = chain.proceed(request.newBuilder()
+                    .cacheControl(CacheControl.FORCE_CACHE)
+                    .build());
+
+            if(offline.isSuccessful()) {
+                Log.d(TAG, "intercept: Network unavailable, serving cached " + request.url().encodedPath());
+                return offline;
+            }
+            offline.body().close();
+
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the network interceptor that replaces the cache headers sent by the server with
+     * the policy for the endpoint. Must be added with {@link OkHttpClient.Builder#addNetworkInterceptor}.
+     *
+     * @return Interceptor that rewrites response cache headers
+     */
+    public Interceptor getNetworkInterceptor() {
+        return new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                Request request = chain.request();
+                Response response = chain.proceed(request);
+
+                CachePolicy policy = getPolicy(request);
+                if(policy == null || !response.isSuccessful()) {
+                    return response;
+                }
+
+                return response.newBuilder()
+                        .removeHeader("Pragma")
+                        .header("Cache-Control", "public, max-age=" + policy.maxAgeSeconds)
+                        .build();
+            }
+        };
+    }
+
+    /**
+     * Fetches a fresh copy of the response in the background. The response body has to be read
+     * completely for OkHttp to commit it to the cache.
+     *
+     * @param request Original request for the stale response
+     */
+    private void revalidate(Request request) {
+        if(client == null) {
+            return;
+        }
+
+        final String key = request.url().toString();
+        synchronized (revalidating) {
+            if(!revalidating.add(key)) {
+                return;
+            }
+        }
+
+        Request networkRequest = request.newBuilder()
+                .cacheControl(CacheControl.FORCE_NETWORK)
+                .build();
+
+        client.newCall(networkRequest).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.w(TAG, "revalidate: Failed to refresh " + call.request().url().encodedPath(), e);
+                finish(key);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try {
+                    response.body().bytes();
+                } finally {
+                    finish(key);
+                }
+            }
+        });
+    }
+
+    private void finish(String key) {
+        synchronized (revalidating) {
+            revalidating.remove(key);
+        }
+    }
+
+    /**
+     * Determines the cache policy for a request based on the path below /3/movie/.
+     *
+     * @param request Request being made
+     * @return CachePolicy for the endpoint or null if the request should not be cached
+     */
+    private static CachePolicy getPolicy(Request request) {
+        if(!"GET".equals(request.method())) {
+            return null;
+        }
+
+        List<String> segments = request.url().pathSegments();
+        int index = segments.indexOf("movie");
+        if(index == -1) {
+            return null;
+        }
+
+        List<String> endpoint = segments.subList(index + 1, segments.size());
+
+        // popular, top_rated
+        if(endpoint.size() == 1 && ("popular".equals(endpoint.get(0)) || "top_rated".equals(endpoint.get(0)))) {
+            return POLICY_LIST;
+        }
+
+        // {id}?append_to_response=videos,reviews
+        if(endpoint.size() == 1 && isNumeric(endpoint.get(0))) {
+            return POLICY_DETAIL;
+        }
+
+        return null;
+    }
+
+    private static boolean isNumeric(String segment) {
+        if(segment.isEmpty()) {
+            return false;
+        }
+        for(int i = 0; i < segment.length(); i++) {
+            if(!Character.isDigit(segment.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class CachePolicy {
+
+        // Responses younger than this are served from the cache without revalidation
+        final long maxAgeSeconds;
+
+        // Responses up to this long past the max age are served and revalidated
+        final long staleSeconds;
+
+        CachePolicy(long maxAgeSeconds, long staleSeconds) {
+            this.maxAgeSeconds = maxAgeSeconds;
+            this.staleSeconds = staleSeconds;
+        }
+    }
+}
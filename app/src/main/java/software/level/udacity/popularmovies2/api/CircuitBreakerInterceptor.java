@@ -0,0 +1,132 @@
+package software.level.udacity.popularmovies2.api;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Keeps a circuit breaker for each host so requests fail fast while a host is degraded instead
+ * of each waiting for its own timeout.
+ *
+ * After FAILURE_THRESHOLD consecutive timeouts, connection failures or server errors the circuit
+ * opens and requests to the host throw a CircuitOpenException immediately. Once OPEN_MILLIS have
+ * passed a single trial request is let through, if it succeeds the circuit closes again and if
+ * it fails the circuit stays open for another period. Requests that can only be answered from
+ * the cache are always let through.
+ */
+public class CircuitBreakerInterceptor implements Interceptor {
+
+    public static final String TAG = CircuitBreakerInterceptor.class.getSimpleName();
+
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long OPEN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final Map<String, CircuitBreaker> breakers = new HashMap<>();
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+
+        if(request.cacheControl().onlyIfCached()) {
+            return chain.proceed(request);
+        }
+
+        String host = request.url().host();
+        CircuitBreaker breaker = getBreaker(host);
+
+        if(!breaker.allowRequest()) {
+            throw new CircuitOpenException(host);
+        }
+
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            // Cancelled calls and other client side errors say nothing about the health of the host
+            if(e instanceof SocketTimeoutException || e instanceof ConnectException
+                    || e instanceof UnknownHostException) {
+                breaker.recordFailure(host);
+            } else {
+                breaker.recordNeutral();
+            }
+            throw e;
+        }
+
+        if(response.code() >= 500) {
+            breaker.recordFailure(host);
+        } else {
+            breaker.recordSuccess();
+        }
+
+        return response;
+    }
+
+    private synchronized CircuitBreaker getBreaker(String host) {
+        CircuitBreaker breaker = breakers.get(host);
+        if(breaker == null) {
+            breaker = new CircuitBreaker();
+            breakers.put(host, breaker);
+        }
+        return breaker;
+    }
+
+    private static class CircuitBreaker {
+
+        private int consecutiveFailures;
+        private long openUntil;
+        private boolean trialInFlight;
+
+        synchronized boolean allowRequest() {
+            if(consecutiveFailures < FAILURE_THRESHOLD) {
+                return true;
+            }
+
+            // Let a single trial request through once the open period has passed
+            if(!trialInFlight && SystemClock.elapsedRealtime() >= openUntil) {
+                trialInFlight = true;
+                return true;
+            }
+
+            return false;
+        }
+
+        synchronized void recordSuccess() {
+            consecutiveFailures = 0;
+            trialInFlight = false;
+        }
+
+        synchronized void recordFailure(String host) {
+            consecutiveFailures++;
+            trialInFlight = false;
+
+            if(consecutiveFailures >= FAILURE_THRESHOLD) {
+                openUntil = SystemClock.elapsedRealtime() + OPEN_MILLIS;
+                Log.w(TAG, "Circuit open for " + host + " after " + consecutiveFailures + " failures");
+            }
+        }
+
+        synchronized void recordNeutral() {
+            trialInFlight = false;
+        }
+    }
+
+    /**
+     * Thrown instead of making a request while the circuit for the host is open.
+     */
+    public static class CircuitOpenException extends IOException {
+        CircuitOpenException(String host) {
+            super("Circuit open for " + host);
+        }
+    }
+}
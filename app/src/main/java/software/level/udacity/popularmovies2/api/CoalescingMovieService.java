@@ -0,0 +1,47 @@
+package software.level.udacity.popularmovies2.api;
+
+import io.reactivex.Observable;
+import software.level.udacity.popularmovies2.api.model.MovieDetailsEnvelope;
+import software.level.udacity.popularmovies2.api.model.MovieEnvelope;
+
+/**
+ * MovieService decorator that coalesces duplicate requests for the per movie endpoints. A second
+ * request for the same movie while the first is still running, or shortly after it finished,
+ * shares the first result instead of going back to the network.
+ *
+ * Requests are only shared within a lane. A request waiting for a background token would make a
+ * user request that joined it wait at background priority.
+ */
+public class CoalescingMovieService implements MovieService {
+
+    private final MovieService service;
+    private final RequestCoalescer coalescer;
+    private final String lane;
+
+    /**
+     * @param service MovieService to decorate
+     * @param coalescer Coalescer that may be shared with the services of other lanes
+     * @param lane Name of the lane, part of every key so lanes never share a request
+     */
+    public CoalescingMovieService(MovieService service, RequestCoalescer coalescer, String lane) {
+        this.service = service;
+        this.coalescer = coalescer;
+        this.lane = lane;
+    }
+
+    @Override
+    public Observable<MovieEnvelope> getPopularMovies(String apiKey, int page, String cacheControl) {
+        return service.getPopularMovies(apiKey, page, cacheControl);
+    }
+
+    @Override
+    public Observable<MovieEnvelope> getTopRatedMovies(String apiKey, int page, String cacheControl) {
+        return service.getTopRatedMovies(apiKey, page, cacheControl);
+    }
+
+    @Override
+    public Observable<MovieDetailsEnvelope> getMovieDetails(int id, String apiKey, String appendToResponse) {
+        return coalescer.coalesce(lane + ":details:" + id + ":" + appendToResponse,
+                service.getMovieDetails(id, apiKey, appendToResponse));
+    }
+}
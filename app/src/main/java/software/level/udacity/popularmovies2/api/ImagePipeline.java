@@ -0,0 +1,134 @@
+package software.level.udacity.popularmovies2.api;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.StatsSnapshot;
+
+import java.io.File;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+
+/**
+ * Singleton class that configures the Picasso instance used for every image in the app.
+ *
+ * Images are downloaded with a client derived from the NetworkManager client, sharing its
+ * connection pool and interceptors, but with a separate, size limited disk cache so posters can
+ * not push API responses out of the response cache. Picasso's default executor is kept, it
+ * already sizes its thread pool to the type of the active network and adjusts it when the
+ * network changes.
+ *
+ * Requests are tagged by screen so the grid can pause its requests during a fling.
+ */
+public class ImagePipeline {
+
+    public static final String TAG = ImagePipeline.class.getSimpleName();
+
+    // Tags for the image requests made by each screen
+    public static final String TAG_GRID = "grid";
+    public static final String TAG_DETAIL = "detail";
+
+    private static ImagePipeline pipeline;
+
+    private static OkHttpClient client;
+    private static Cache cache;
+    private static OkHttp3Downloader downloader;
+    private static Picasso picasso;
+
+    // Location and maximum size of the on disk image cache
+    private static final String CACHE_DIRECTORY = "images";
+    private static final long CACHE_SIZE_BYTES = 50 * 1024 * 1024;
+
+    private ImagePipeline(Context context) {
+        cache = new Cache(new File(context.getCacheDir(), CACHE_DIRECTORY), CACHE_SIZE_BYTES);
+
+        client = NetworkManager.getClient().newBuilder()
+                .cache(cache)
+                .build();
+
+        downloader = new OkHttp3Downloader(client);
+
+        picasso = new Picasso.Builder(context)
+                .downloader(downloader)
+                .build();
+
+        // Picasso.with() returns this instance from now on
+        Picasso.setSingletonInstance(picasso);
+    }
+
+    /**
+     * Creates the image pipeline. Must be called after the NetworkManager is initialized and
+     * before Picasso is used anywhere.
+     *
+     * @param context Context used to locate the cache directory
+     */
+    public static void initializeImagePipeline(Context context) {
+        if(pipeline == null) {
+            pipeline = new ImagePipeline(context.getApplicationContext());
+        }
+    }
+
+    /**
+     * @return OkHttpClient that reads and writes the image disk cache
+     */
+    public static OkHttpClient getClient() {
+        checkInitialized();
+        return client;
+    }
+
+    /**
+     * @return Share of requests served from Picasso's memory cache, 0 if there were none
+     */
+    public static float getMemoryCacheHitRate() {
+        checkInitialized();
+
+        StatsSnapshot snapshot = picasso.getSnapshot();
+        long requests = snapshot.cacheHits + snapshot.cacheMisses;
+
+        return requests == 0 ? 0 : snapshot.cacheHits / (float) requests;
+    }
+
+    /**
+     * @return Share of image downloads served from the disk cache, 0 if there were none
+     */
+    public static float getDiskCacheHitRate() {
+        checkInitialized();
+
+        int requests = cache.requestCount();
+        return requests == 0 ? 0 : cache.hitCount() / (float) requests;
+    }
+
+    /**
+     * @return Number of image bytes served from the disk cache
+     */
+    public static long getBytesFromCache() {
+        checkInitialized();
+        return downloader.getBytesFromCache();
+    }
+
+    /**
+     * @return Number of image bytes served from the network
+     */
+    public static long getBytesFromNetwork() {
+        checkInitialized();
+        return downloader.getBytesFromNetwork();
+    }
+
+    /**
+     * Logs the cache hit rates and the bytes served so far.
+     */
+    public static void logStats() {
+        Log.d(TAG, String.format("logStats: Memory hit rate %.2f, disk hit rate %.2f, %d KB from cache, %d KB from network",
+                getMemoryCacheHitRate(), getDiskCacheHitRate(),
+                getBytesFromCache() / 1024, getBytesFromNetwork() / 1024));
+    }
+
+    private static void checkInitialized() {
+        if(pipeline == null) {
+            throw new IllegalStateException("ImagePipeline has not been initialized");
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package software.level.udacity.popularmovies2.api;
+
+import android.os.SystemClock;
+import android.support.v4.util.LruCache;
+
+import java.util.concurrent.TimeUnit;
+
+import software.level.udacity.popularmovies2.api.model.MovieDetailsEnvelope;
+
+/**
+ * Bounded in memory cache of movie details keyed by movie id. Details that are prefetched from
+ * the grid are stored here so the detail screen can show them without waiting for the network.
+ *
+ * Entries expire after the max age the HTTP cache gives the details endpoint, after that the
+ * details are requested again and go through the cache policy like any other request.
+ */
+public class MovieDetailsCache {
+
+    private static final int MAX_ENTRIES = 30;
+
+    private static final long MAX_AGE_MILLIS =
+            TimeUnit.SECONDS.toMillis(CachePolicyInterceptor.DETAIL_MAX_AGE_SECONDS);
+
+    private static final LruCache<Integer, Entry> cache = new LruCache<>(MAX_ENTRIES);
+
+    private MovieDetailsCache() {}
+
+    /**
+     * @param movieId Id of the movie
+     * @return Details of the movie or null if none are cached or they have expired
+     */
+    public static MovieDetailsEnvelope get(int movieId) {
+        Entry entry = cache.get(movieId);
+
+        if(entry == null) {
+            return null;
+        }
+
+        if(SystemClock.elapsedRealtime() - entry.fetchedAt >= MAX_AGE_MILLIS) {
+            cache.remove(movieId);
+            return null;
+        }
+
+        return entry.details;
+    }
+
+    public static void put(int movieId, MovieDetailsEnvelope details) {
+        cache.put(movieId, new Entry(details, SystemClock.elapsedRealtime()));
+    }
+
+    public static boolean contains(int movieId) {
+        return get(movieId) != null;
+    }
+
+    private static class Entry {
+
+        final MovieDetailsEnvelope details;
+
+        // Time the details were stored, in elapsed realtime
+        final long fetchedAt;
+
+        Entry(MovieDetailsEnvelope details, long fetchedAt) {
+            this.details = details;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
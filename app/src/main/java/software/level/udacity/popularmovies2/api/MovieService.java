@@ -2,23 +2,32 @@ package software.level.udacity.popularmovies2.api;
 
 import io.reactivex.Observable;
 import retrofit2.http.GET;
+import retrofit2.http.Header;
 import retrofit2.http.Path;
 import retrofit2.http.Query;
+import software.level.udacity.popularmovies2.api.model.MovieDetailsEnvelope;
 import software.level.udacity.popularmovies2.api.model.MovieEnvelope;
-import software.level.udacity.popularmovies2.api.model.MovieReviewEnvelope;
-import software.level.udacity.popularmovies2.api.model.MovieTrailerEnvelope;
 
 public interface MovieService {
 
+    // Cache-Control value that skips the HTTP cache, for refreshes that must reach the server
+    String CACHE_CONTROL_REFRESH = "no-cache";
+
+    /**
+     * @param cacheControl Cache-Control header for the request, null to apply the cache policy
+     */
     @GET("popular")
-    Observable<MovieEnvelope> getPopularMovies(@Query("api_key") String apiKey);
+    Observable<MovieEnvelope> getPopularMovies(@Query("api_key") String apiKey, @Query("page") int page,
+                                               @Header("Cache-Control") String cacheControl);
 
+    /**
+     * @param cacheControl Cache-Control header for the request, null to apply the cache policy
+     */
     @GET("top_rated")
-    Observable<MovieEnvelope> getTopRatedMovies(@Query("api_key") String apiKey);
-
-    @GET("{id}/reviews")
-    Observable<MovieReviewEnvelope> getReviews(@Path("id") int id, @Query("api_key") String apiKey);
+    Observable<MovieEnvelope> getTopRatedMovies(@Query("api_key") String apiKey, @Query("page") int page,
+                                                @Header("Cache-Control") String cacheControl);
 
-    @GET("{id}/videos")
-    Observable<MovieTrailerEnvelope> getTrailers(@Path("id") int id, @Query("api_key") String apiKey);
+    @GET("{id}")
+    Observable<MovieDetailsEnvelope> getMovieDetails(@Path("id") int id, @Query("api_key") String apiKey,
+                                                     @Query("append_to_response") String appendToResponse);
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package software.level.udacity.popularmovies2.api;
 
+import okhttp3.OkHttpClient;
 import retrofit2.Retrofit;
 
 /**
@@ -9,24 +10,65 @@ public class MovieServiceManager {
 
     private static MovieServiceManager manager;
     private MovieService service;
+    private MovieService backgroundService;
 
     private static final String MOVIE_BASE_URL = "https://api.themoviedb.org/3/movie/";
 
+    // Names of the request lanes, see CoalescingMovieService
+    private static final String LANE_USER = "user";
+    private static final String LANE_BACKGROUND = "background";
+
     private MovieServiceManager() {
+        // Every attempt that reaches the network takes a token from the shared rate limiter in
+        // the client of its lane, transient failures are retried and duplicate requests for the
+        // same movie share a single call, including its retries. Requests are only shared within
+        // a lane, a user request never joins a background request that may still be waiting
+        // behind every user request for a token.
+        RequestCoalescer coalescer = new RequestCoalescer();
+
+        service = new CoalescingMovieService(new ResilientMovieService(
+                createApi(NetworkManager.getApiClient())), coalescer, LANE_USER);
+
+        backgroundService = new CoalescingMovieService(new ResilientMovieService(
+                createApi(NetworkManager.getBackgroundApiClient())), coalescer, LANE_BACKGROUND);
+    }
+
+    private static MovieService createApi(OkHttpClient client) {
         Retrofit retrofit = new Retrofit.Builder()
                 .baseUrl(MOVIE_BASE_URL)
                 .addCallAdapterFactory(NetworkManager.getRxJava2CallAdapterFactory())
                 .addConverterFactory(NetworkManager.getGsonConverter())
-                .client(NetworkManager.getClient())
+                .client(client)
                 .build();
-        service = retrofit.create(MovieService.class);
+        return retrofit.create(MovieService.class);
     }
 
-    public static MovieService getService() {
+    private static MovieServiceManager getManager() {
         if(manager == null) {
             manager = new MovieServiceManager();
         }
-        return manager.service;
+        return manager;
+    }
+
+    /**
+     * @return MovieService for requests the user is waiting on
+     */
+    public static MovieService getService() {
+        return getManager().service;
+    }
+
+    /**
+     * @return MovieService for requests made ahead of time, these yield to user requests
+     */
+    public static MovieService getBackgroundService() {
+        return getManager().backgroundService;
+    }
+
+    /**
+     * @return Rate limiter shared by all requests, exposes the token count and queue depths
+     */
+    public static TokenBucketRateLimiter getRateLimiter() {
+        return NetworkManager.getRateLimiter();
     }
 
 }
@@ -3,12 +3,20 @@ package software.level.udacity.popularmovies2.api;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.Build;
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 
+import okhttp3.Request;
+import okhttp3.Response;
+
 public class MovieServiceUtils {
 
     public static final String TAG = MovieServiceUtils.class.getSimpleName();
@@ -42,14 +50,136 @@ public class MovieServiceUtils {
         return url;
     }
 
-    public static byte[] encodeImageData(Bitmap image) {
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        image.compress(Bitmap.CompressFormat.PNG, 0, stream);
+    /**
+     * Downloads the encoded bytes of an image exactly as they are served by The Movie DB. The
+     * image pipeline client is used so an image Picasso already downloaded is read from the
+     * image cache without a network request.
+     * Must not be called on the main thread.
+     *
+     * @param url URL of the image, typically from {@link #buildImageURL(String, String)}
+     * @return Encoded image data, usually JPEG
+     * @throws IOException If the image could not be downloaded
+     */
+    public static byte[] downloadImageData(URL url) throws IOException {
+        Request request = new Request.Builder()
+                .url(url)
+                .build();
+
+        Response response = ImagePipeline.getClient().newCall(request).execute();
+        if(!response.isSuccessful()) {
+            response.body().close();
+            throw new IOException("Unexpected response " + response.code() + " for " + url);
+        }
+
+        // Reading the bytes also closes the body
+        return response.body().bytes();
+    }
+
+    /**
+     * Decodes an image straight from a file, subsampled so it is no larger than needed to fill
+     * the requested size. Only the image bounds are read to pick the sample size. If the
+     * {@link BitmapPool} has a bitmap of the decoded size the image is decoded into it.
+     * @param file File that contains the encoded image
+     * @param reqWidth Width the image will be displayed at in pixels
+     * @param reqHeight Height the image will be displayed at in pixels, 0 if only the width matters
+     * @return Decoded image or null if the file is missing or can not be decoded
+     */
+    public static Bitmap decodeImageFile(File file, int reqWidth, int reqHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+
+        if(options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight,
+                reqWidth, reqHeight);
+
+        // Read the bounds again to learn the exact size the sampled image decodes to
+        if(options.inSampleSize > 1) {
+            BitmapFactory.decodeFile(file.getPath(), options);
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+
+        // Before KitKat a bitmap can only be reused when the image is not subsampled
+        if(options.inSampleSize == 1 || Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            options.inBitmap = BitmapPool.get(options.outWidth, options.outHeight,
+                    options.inPreferredConfig);
+        }
+
+        if(options.inBitmap != null) {
+            Bitmap bitmap = null;
+
+            try {
+                bitmap = decodeStream(file, options);
+            } catch (IllegalArgumentException e) {
+                // The pooled bitmap turned out to be unsuitable, decode into a new one below
+                Log.w(TAG, "decodeImageFile: Could not reuse bitmap for " + file, e);
+            }
+
+            if(bitmap != null) {
+                BitmapPool.recordDecode(true);
+                return bitmap;
+            }
+
+            options.inBitmap = null;
+        }
+
+        Bitmap bitmap = decodeStream(file, options);
+        if(bitmap != null) {
+            BitmapPool.recordDecode(false);
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Decodes a file through {@link BitmapFactory#decodeStream}, which unlike
+     * {@link BitmapFactory#decodeFile} lets the exception of a failed inBitmap reuse through.
+     *
+     * @return Decoded image or null if the file can not be read or decoded
+     * @throws IllegalArgumentException If the image can not be decoded into options.inBitmap
+     */
+    private static Bitmap decodeStream(File file, BitmapFactory.Options options) {
+        InputStream in = null;
 
-        return stream.toByteArray();
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            return BitmapFactory.decodeStream(in, null, options);
+        } catch (IOException e) {
+            Log.e(TAG, "decodeStream: Problem reading " + file, e);
+            return null;
+        } finally {
+            if(in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing left to read
+                }
+            }
+        }
     }
 
-    public static Bitmap decodeImageData(byte[] image) {
-        return BitmapFactory.decodeByteArray(image, 0, image.length);
+    /**
+     * Picks the largest power of two sample size that keeps the decoded image at least as large
+     * as the requested size, so it is never scaled up when displayed.
+     */
+    private static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+
+        if(reqWidth <= 0) {
+            return inSampleSize;
+        }
+
+        while(width / (inSampleSize * 2) >= reqWidth
+                && (reqHeight <= 0 || height / (inSampleSize * 2) >= reqHeight)) {
+            inSampleSize *= 2;
+        }
+
+        return inSampleSize;
     }
 }
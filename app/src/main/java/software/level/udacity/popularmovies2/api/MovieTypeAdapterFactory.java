@@ -0,0 +1,512 @@
+package software.level.udacity.popularmovies2.api;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import software.level.udacity.popularmovies2.api.model.Movie;
+import software.level.udacity.popularmovies2.api.model.MovieDetailsEnvelope;
+import software.level.udacity.popularmovies2.api.model.MovieEnvelope;
+import software.level.udacity.popularmovies2.api.model.MovieReview;
+import software.level.udacity.popularmovies2.api.model.MovieReviewEnvelope;
+import software.level.udacity.popularmovies2.api.model.MovieTrailer;
+import software.level.udacity.popularmovies2.api.model.MovieTrailerEnvelope;
+
+/**
+ * Provides streaming TypeAdapters for the API models so Gson does not have to decode them with
+ * reflection. Each adapter reads the fields it knows about directly from the JsonReader and skips
+ * everything else without materializing it.
+ *
+ * The field names match the SerializedName annotations on the models, those annotations are
+ * still used by anything that falls back to the reflective adapters.
+ */
+public class MovieTypeAdapterFactory implements TypeAdapterFactory {
+
+    private static final MovieAdapter MOVIE_ADAPTER = new MovieAdapter();
+    private static final MovieEnvelopeAdapter MOVIE_ENVELOPE_ADAPTER = new MovieEnvelopeAdapter();
+    private static final MovieReviewAdapter MOVIE_REVIEW_ADAPTER = new MovieReviewAdapter();
+    private static final MovieReviewEnvelopeAdapter MOVIE_REVIEW_ENVELOPE_ADAPTER = new MovieReviewEnvelopeAdapter();
+    private static final MovieTrailerAdapter MOVIE_TRAILER_ADAPTER = new MovieTrailerAdapter();
+    private static final MovieTrailerEnvelopeAdapter MOVIE_TRAILER_ENVELOPE_ADAPTER = new MovieTrailerEnvelopeAdapter();
+    private static final MovieDetailsEnvelopeAdapter MOVIE_DETAILS_ENVELOPE_ADAPTER = new MovieDetailsEnvelopeAdapter();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+
+        if(rawType == Movie.class) {
+            return (TypeAdapter<T>) MOVIE_ADAPTER;
+        } else if(rawType == MovieEnvelope.class) {
+            return (TypeAdapter<T>) MOVIE_ENVELOPE_ADAPTER;
+        } else if(rawType == MovieReview.class) {
+            return (TypeAdapter<T>) MOVIE_REVIEW_ADAPTER;
+        } else if(rawType == MovieReviewEnvelope.class) {
+            return (TypeAdapter<T>) MOVIE_REVIEW_ENVELOPE_ADAPTER;
+        } else if(rawType == MovieTrailer.class) {
+            return (TypeAdapter<T>) MOVIE_TRAILER_ADAPTER;
+        } else if(rawType == MovieTrailerEnvelope.class) {
+            return (TypeAdapter<T>) MOVIE_TRAILER_ENVELOPE_ADAPTER;
+        } else if(rawType == MovieDetailsEnvelope.class) {
+            return (TypeAdapter<T>) MOVIE_DETAILS_ENVELOPE_ADAPTER;
+        }
+
+        return null;
+    }
+
+    private static class MovieAdapter extends TypeAdapter<Movie> {
+
+        @Override
+        public Movie read(JsonReader in) throws IOException {
+            if(in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            Movie movie = new Movie();
+
+            in.beginObject();
+            while(in.hasNext()) {
+                switch(in.nextName()) {
+                    case "id":
+                        movie.id = readInteger(in);
+                        break;
+                    case "poster_path":
+                        movie.posterPath = readString(in);
+                        break;
+                    case "overview":
+                        movie.overview = readString(in);
+                        break;
+                    case "release_date":
+                        movie.releaseDate = readString(in);
+                        break;
+                    case "title":
+                        movie.title = readString(in);
+                        break;
+                    case "vote_average":
+                        movie.voteAverage = readDouble(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return movie;
+        }
+
+        @Override
+        public void write(JsonWriter out, Movie movie) throws IOException {
+            if(movie == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("id").value(movie.id);
+            out.name("poster_path").value(movie.posterPath);
+            out.name("overview").value(movie.overview);
+            out.name("release_date").value(movie.releaseDate);
+            out.name("title").value(movie.title);
+            out.name("vote_average").value(movie.voteAverage);
+            out.endObject();
+        }
+    }
+
+    private static class MovieEnvelopeAdapter extends TypeAdapter<MovieEnvelope> {
+
+        @Override
+        public MovieEnvelope read(JsonReader in) throws IOException {
+            if(in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            Integer page = null;
+            Integer totalResults = null;
+            Integer totalPages = null;
+            List<Movie> movies = null;
+
+            in.beginObject();
+            while(in.hasNext()) {
+                switch(in.nextName()) {
+                    case "page":
+                        page = readInteger(in);
+                        break;
+                    case "results":
+                        movies = readList(in, MOVIE_ADAPTER);
+                        break;
+                    case "total_results":
+                        totalResults = readInteger(in);
+                        break;
+                    case "total_pages":
+                        totalPages = readInteger(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            MovieEnvelope envelope = new MovieEnvelope(movies, 0);
+            envelope.page = page;
+            envelope.totalResults = totalResults;
+            envelope.totalPages = totalPages;
+
+            return envelope;
+        }
+
+        @Override
+        public void write(JsonWriter out, MovieEnvelope envelope) throws IOException {
+            if(envelope == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("page").value(envelope.page);
+            out.name("results");
+            writeList(out, envelope.movies, MOVIE_ADAPTER);
+            out.name("total_results").value(envelope.totalResults);
+            out.name("total_pages").value(envelope.totalPages);
+            out.endObject();
+        }
+    }
+
+    private static class MovieReviewAdapter extends TypeAdapter<MovieReview> {
+
+        @Override
+        public MovieReview read(JsonReader in) throws IOException {
+            if(in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            MovieReview review = new MovieReview();
+
+            in.beginObject();
+            while(in.hasNext()) {
+                switch(in.nextName()) {
+                    case "id":
+                        review.id = readString(in);
+                        break;
+                    case "author":
+                        review.author = readString(in);
+                        break;
+                    case "content":
+                        // Review bodies can be large, read them straight into the final string
+                        review.content = readString(in);
+                        break;
+                    case "url":
+                        review.url = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return review;
+        }
+
+        @Override
+        public void write(JsonWriter out, MovieReview review) throws IOException {
+            if(review == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("id").value(review.id);
+            out.name("author").value(review.author);
+            out.name("content").value(review.content);
+            out.name("url").value(review.url);
+            out.endObject();
+        }
+    }
+
+    private static class MovieReviewEnvelopeAdapter extends TypeAdapter<MovieReviewEnvelope> {
+
+        @Override
+        public MovieReviewEnvelope read(JsonReader in) throws IOException {
+            if(in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            Integer id = null;
+            Integer page = null;
+            Integer totalResults = null;
+            Integer totalPages = null;
+            List<MovieReview> reviews = null;
+
+            in.beginObject();
+            while(in.hasNext()) {
+                switch(in.nextName()) {
+                    case "id":
+                        id = readInteger(in);
+                        break;
+                    case "page":
+                        page = readInteger(in);
+                        break;
+                    case "results":
+                        reviews = readList(in, MOVIE_REVIEW_ADAPTER);
+                        break;
+                    case "total_results":
+                        totalResults = readInteger(in);
+                        break;
+                    case "total_pages":
+                        totalPages = readInteger(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            MovieReviewEnvelope envelope = new MovieReviewEnvelope(reviews);
+            envelope.id = id;
+            envelope.page = page;
+            envelope.totalResults = totalResults;
+            envelope.totalPages = totalPages;
+
+            return envelope;
+        }
+
+        @Override
+        public void write(JsonWriter out, MovieReviewEnvelope envelope) throws IOException {
+            if(envelope == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("id").value(envelope.id);
+            out.name("page").value(envelope.page);
+            out.name("results");
+            writeList(out, envelope.reviews, MOVIE_REVIEW_ADAPTER);
+            out.name("total_results").value(envelope.totalResults);
+            out.name("total_pages").value(envelope.totalPages);
+            out.endObject();
+        }
+    }
+
+    private static class MovieTrailerAdapter extends TypeAdapter<MovieTrailer> {
+
+        @Override
+        public MovieTrailer read(JsonReader in) throws IOException {
+            if(in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            MovieTrailer trailer = new MovieTrailer();
+
+            in.beginObject();
+            while(in.hasNext()) {
+                switch(in.nextName()) {
+                    case "id":
+                        trailer.id = readString(in);
+                        break;
+                    case "key":
+                        trailer.key = readString(in);
+                        break;
+                    case "name":
+                        trailer.name = readString(in);
+                        break;
+                    case "size":
+                        trailer.size = readInteger(in);
+                        break;
+                    case "type":
+                        trailer.type = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return trailer;
+        }
+
+        @Override
+        public void write(JsonWriter out, MovieTrailer trailer) throws IOException {
+            if(trailer == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("id").value(trailer.id);
+            out.name("key").value(trailer.key);
+            out.name("name").value(trailer.name);
+            out.name("size").value(trailer.size);
+            out.name("type").value(trailer.type);
+            out.endObject();
+        }
+    }
+
+    private static class MovieTrailerEnvelopeAdapter extends TypeAdapter<MovieTrailerEnvelope> {
+
+        @Override
+        public MovieTrailerEnvelope read(JsonReader in) throws IOException {
+            if(in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            Integer id = null;
+            List<MovieTrailer> trailers = null;
+
+            in.beginObject();
+            while(in.hasNext()) {
+                switch(in.nextName()) {
+                    case "id":
+                        id = readInteger(in);
+                        break;
+                    case "results":
+                        trailers = readList(in, MOVIE_TRAILER_ADAPTER);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            MovieTrailerEnvelope envelope = new MovieTrailerEnvelope(trailers);
+            envelope.id = id;
+
+            return envelope;
+        }
+
+        @Override
+        public void write(JsonWriter out, MovieTrailerEnvelope envelope) throws IOException {
+            if(envelope == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("id").value(envelope.id);
+            out.name("results");
+            writeList(out, envelope.trailers, MOVIE_TRAILER_ADAPTER);
+            out.endObject();
+        }
+    }
+
+    private static class MovieDetailsEnvelopeAdapter extends TypeAdapter<MovieDetailsEnvelope> {
+
+        @Override
+        public MovieDetailsEnvelope read(JsonReader in) throws IOException {
+            if(in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            Integer id = null;
+            MovieTrailerEnvelope videos = null;
+            MovieReviewEnvelope reviews = null;
+
+            in.beginObject();
+            while(in.hasNext()) {
+                switch(in.nextName()) {
+                    case "id":
+                        id = readInteger(in);
+                        break;
+                    case "videos":
+                        videos = MOVIE_TRAILER_ENVELOPE_ADAPTER.read(in);
+                        break;
+                    case "reviews":
+                        reviews = MOVIE_REVIEW_ENVELOPE_ADAPTER.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            MovieDetailsEnvelope envelope = new MovieDetailsEnvelope(videos, reviews);
+            envelope.id = id;
+
+            return envelope;
+        }
+
+        @Override
+        public void write(JsonWriter out, MovieDetailsEnvelope envelope) throws IOException {
+            if(envelope == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("id").value(envelope.id);
+            out.name("videos");
+            MOVIE_TRAILER_ENVELOPE_ADAPTER.write(out, envelope.videos);
+            out.name("reviews");
+            MOVIE_REVIEW_ENVELOPE_ADAPTER.write(out, envelope.reviews);
+            out.endObject();
+        }
+    }
+
+    private static String readString(JsonReader in) throws IOException {
+        if(in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    private static Integer readInteger(JsonReader in) throws IOException {
+        if(in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextInt();
+    }
+
+    private static Double readDouble(JsonReader in) throws IOException {
+        if(in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextDouble();
+    }
+
+    private static <T> List<T> readList(JsonReader in, TypeAdapter<T> adapter) throws IOException {
+        if(in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        List<T> list = new ArrayList<>();
+
+        in.beginArray();
+        while(in.hasNext()) {
+            list.add(adapter.read(in));
+        }
+        in.endArray();
+
+        return list;
+    }
+
+    private static <T> void writeList(JsonWriter out, List<T> list, TypeAdapter<T> adapter) throws IOException {
+        if(list == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginArray();
+        for(T item : list) {
+            adapter.write(out, item);
+        }
+        out.endArray();
+    }
+}
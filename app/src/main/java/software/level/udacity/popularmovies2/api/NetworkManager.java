@@ -1,7 +1,14 @@
 package software.level.udacity.popularmovies2.api;
 
+import android.content.Context;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.jakewharton.retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
 
+import java.io.File;
+
+import okhttp3.Cache;
 import okhttp3.OkHttpClient;
 import retrofit2.converter.gson.GsonConverterFactory;
 
@@ -14,40 +21,115 @@ public class NetworkManager {
     private static NetworkManager manager;
 
     private static OkHttpClient client;
+    private static OkHttpClient apiClient;
+    private static OkHttpClient backgroundApiClient;
+    private static TokenBucketRateLimiter rateLimiter;
     private static GsonConverterFactory gsonConverter;
     private static RxJava2CallAdapterFactory rxJava2CallAdapterFactory;
 
-    private NetworkManager() {
-        client = new OkHttpClient();
-        gsonConverter = GsonConverterFactory.create();
+    // Location and maximum size of the on disk response cache
+    private static final String CACHE_DIRECTORY = "http";
+    private static final long CACHE_SIZE_BYTES = 10 * 1024 * 1024;
+
+    // The Movie Database allows 40 requests every 10 seconds per api key
+    private static final int RATE_LIMIT_CAPACITY = 40;
+    private static final int RATE_LIMIT_PER_SECOND = 4;
+
+    private NetworkManager(Context context) {
+        Cache cache = new Cache(new File(context.getCacheDir(), CACHE_DIRECTORY), CACHE_SIZE_BYTES);
+        CachePolicyInterceptor cachePolicyInterceptor = new CachePolicyInterceptor();
+
+        client = new OkHttpClient.Builder()
+                .cache(cache)
+                .addInterceptor(cachePolicyInterceptor)
+                .addInterceptor(new CircuitBreakerInterceptor())
+                .addNetworkInterceptor(cachePolicyInterceptor.getNetworkInterceptor())
+                .build();
+
+        // Requests to the API take a token from the shared rate limiter once they leave the
+        // cache. Both clients share the cache and connections of the base client, which the
+        // image pipeline builds on without the limit.
+        rateLimiter = new TokenBucketRateLimiter(RATE_LIMIT_CAPACITY, RATE_LIMIT_PER_SECOND);
+
+        apiClient = client.newBuilder()
+                .addNetworkInterceptor(new RateLimitInterceptor(rateLimiter,
+                        TokenBucketRateLimiter.PRIORITY_USER))
+                .build();
+
+        backgroundApiClient = client.newBuilder()
+                .addNetworkInterceptor(new RateLimitInterceptor(rateLimiter,
+                        TokenBucketRateLimiter.PRIORITY_BACKGROUND))
+                .build();
+
+        // The interceptor revalidates stale responses in the background, nobody waits for them
+        cachePolicyInterceptor.setClient(backgroundApiClient);
+
+        // Decode the API models with streaming adapters instead of reflection
+        Gson gson = new GsonBuilder()
+                .registerTypeAdapterFactory(new MovieTypeAdapterFactory())
+                .create();
+        gsonConverter = GsonConverterFactory.create(gson);
         rxJava2CallAdapterFactory = RxJava2CallAdapterFactory.create();
     }
 
-    public static void initializeNetworkManager() {
+    /**
+     * Creates the network manager. Must be called with a context before any of the getters
+     * are used so the response cache can be placed in the application cache directory.
+     *
+     * @param context Context used to locate the cache directory
+     */
+    public static void initializeNetworkManager(Context context) {
         if(manager == null) {
-            manager = new NetworkManager();
+            manager = new NetworkManager(context.getApplicationContext());
         }
     }
 
+    /**
+     * @return OkHttpClient with the response cache and without the API rate limit
+     */
     public static OkHttpClient getClient() {
-        if(client == null) {
-            initializeNetworkManager();
-        }
+        checkInitialized();
         return client;
     }
 
+    /**
+     * @return OkHttpClient for API requests the user is waiting on
+     */
+    public static OkHttpClient getApiClient() {
+        checkInitialized();
+        return apiClient;
+    }
+
+    /**
+     * @return OkHttpClient for API requests made ahead of time, these yield to user requests
+     */
+    public static OkHttpClient getBackgroundApiClient() {
+        checkInitialized();
+        return backgroundApiClient;
+    }
+
+    /**
+     * @return Rate limiter shared by all API requests, exposes the token count and queue depths
+     */
+    public static TokenBucketRateLimiter getRateLimiter() {
+        checkInitialized();
+        return rateLimiter;
+    }
+
     public static GsonConverterFactory getGsonConverter() {
-        if(gsonConverter == null) {
-            initializeNetworkManager();
-        }
+        checkInitialized();
         return gsonConverter;
     }
 
     public static RxJava2CallAdapterFactory getRxJava2CallAdapterFactory() {
-        if(rxJava2CallAdapterFactory == null) {
-            initializeNetworkManager();
-        }
+        checkInitialized();
         return rxJava2CallAdapterFactory;
     }
 
+    private static void checkInitialized() {
+        if(manager == null) {
+            throw new IllegalStateException("NetworkManager has not been initialized");
+        }
+    }
+
 }
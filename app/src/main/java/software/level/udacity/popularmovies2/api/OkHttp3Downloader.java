@@ -0,0 +1,132 @@
+package software.level.udacity.popularmovies2.api;
+
+import android.net.Uri;
+
+import com.squareup.picasso.Downloader;
+import com.squareup.picasso.NetworkPolicy;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.CacheControl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+
+/**
+ * Picasso downloader that makes its requests with an OkHttp 3 client, so images share the
+ * connection pool of the rest of the app and use the client's disk cache. Counts the bytes
+ * served from the disk cache and from the network.
+ */
+public class OkHttp3Downloader implements Downloader {
+
+    private final OkHttpClient client;
+
+    private final AtomicLong bytesFromCache = new AtomicLong();
+    private final AtomicLong bytesFromNetwork = new AtomicLong();
+
+    public OkHttp3Downloader(OkHttpClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public Response load(Uri uri, int networkPolicy) throws IOException {
+        Request.Builder builder = new Request.Builder().url(uri.toString());
+
+        CacheControl cacheControl = getCacheControl(networkPolicy);
+        if(cacheControl != null) {
+            builder.cacheControl(cacheControl);
+        }
+
+        okhttp3.Response response = client.newCall(builder.build()).execute();
+
+        if(response.code() >= 300) {
+            response.body().close();
+            throw new ResponseException(response.code() + " " + response.message(),
+                    networkPolicy, response.code());
+        }
+
+        boolean fromCache = response.cacheResponse() != null;
+        ResponseBody body = response.body();
+
+        InputStream stream = new CountingInputStream(body.byteStream(),
+                fromCache ? bytesFromCache : bytesFromNetwork);
+
+        return new Response(stream, fromCache, body.contentLength());
+    }
+
+    @Override
+    public void shutdown() {
+        // The client is shared with the rest of the app, there is nothing to release here
+    }
+
+    /**
+     * @return Number of image bytes read from the disk cache
+     */
+    public long getBytesFromCache() {
+        return bytesFromCache.get();
+    }
+
+    /**
+     * @return Number of image bytes read from the network
+     */
+    public long getBytesFromNetwork() {
+        return bytesFromNetwork.get();
+    }
+
+    /**
+     * Translates Picasso's network policy into the equivalent OkHttp cache control.
+     *
+     * @return CacheControl or null to use the default behavior
+     */
+    private static CacheControl getCacheControl(int networkPolicy) {
+        if(networkPolicy == 0) {
+            return null;
+        }
+
+        if(NetworkPolicy.isOfflineOnly(networkPolicy)) {
+            return CacheControl.FORCE_CACHE;
+        }
+
+        CacheControl.Builder builder = new CacheControl.Builder();
+
+        if(!NetworkPolicy.shouldReadFromDiskCache(networkPolicy)) {
+            builder.noCache();
+        }
+        if(!NetworkPolicy.shouldWriteToDiskCache(networkPolicy)) {
+            builder.noStore();
+        }
+
+        return builder.build();
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private final AtomicLong counter;
+
+        CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b != -1) {
+                counter.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if(read > 0) {
+                counter.addAndGet(read);
+            }
+            return read;
+        }
+    }
+}
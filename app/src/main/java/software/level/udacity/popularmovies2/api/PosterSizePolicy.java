@@ -0,0 +1,74 @@
+package software.level.udacity.popularmovies2.api;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.support.v4.util.SimpleArrayMap;
+
+/**
+ * Chooses which of the poster widths offered by The Movie DB image service to request for a
+ * given display width.
+ *
+ * Only the fixed widths offered by the service are ever returned, so posters shown at slightly
+ * different sizes share the same URL and therefore the same HTTP and memory cache entries. On an
+ * unmetered connection the smallest width that covers the display width is used so posters are
+ * never upscaled. On a metered connection the largest width that does not exceed it is used
+ * instead, saving data at the cost of a little upscaling.
+ */
+public class PosterSizePolicy {
+
+    // Poster widths offered by the image service, smallest first
+    private static final int[] WIDTHS = {92, 154, 185, 342, 500, 780};
+
+    private static final String SIZE_ORIGINAL = "original";
+
+    // Smallest size offered, used for previews while the full size poster loads
+    public static final String SIZE_THUMBNAIL = "w92";
+
+    // Size chosen for each display width, kept for the life of the process
+    private static final SimpleArrayMap<Integer, String> selected = new SimpleArrayMap<>();
+
+    private PosterSizePolicy() {}
+
+    /**
+     * Selects the poster size for the current connection. The first size chosen for a display
+     * width is kept for the life of the process, so switching networks does not split the caches.
+     *
+     * @param context Context used to look up the connection type
+     * @param displayWidth Width the poster is displayed at in pixels
+     * @return Size to pass to {@link MovieServiceUtils#buildImageURL(String, String)}
+     */
+    public static synchronized String selectPosterSize(Context context, int displayWidth) {
+        String size = selected.get(displayWidth);
+        if(size != null) {
+            return size;
+        }
+
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+
+        boolean metered = ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+
+        size = selectPosterSize(displayWidth, metered);
+        selected.put(displayWidth, size);
+
+        return size;
+    }
+
+    /**
+     * @param displayWidth Width the poster is displayed at in pixels
+     * @param metered True if the poster is downloaded over a metered connection
+     * @return Size to pass to {@link MovieServiceUtils#buildImageURL(String, String)}
+     */
+    public static String selectPosterSize(int displayWidth, boolean metered) {
+        for(int i = 0; i < WIDTHS.length; i++) {
+            if(WIDTHS[i] >= displayWidth) {
+                // An exact match is never upscaled, otherwise step down to save data
+                int index = metered && WIDTHS[i] > displayWidth ? Math.max(0, i - 1) : i;
+                return "w" + WIDTHS[index];
+            }
+        }
+
+        return metered ? "w" + WIDTHS[WIDTHS.length - 1] : SIZE_ORIGINAL;
+    }
+}
@@ -0,0 +1,46 @@
+package software.level.udacity.popularmovies2.api;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Network interceptor that takes a token from the shared rate limiter before a request goes out
+ * to the server. Responses served from the cache never reach network interceptors, so only
+ * requests that actually count against the Movie Database limit wait for a token, including
+ * conditional requests and background revalidations.
+ *
+ * The calling thread is blocked until the token is granted. All requests made through a client
+ * with this interceptor use the same priority lane.
+ */
+public class RateLimitInterceptor implements Interceptor {
+
+    private final TokenBucketRateLimiter limiter;
+    private final int priority;
+
+    /**
+     * @param limiter Rate limiter shared by every client that talks to the Movie Database
+     * @param priority TokenBucketRateLimiter.PRIORITY_USER or PRIORITY_BACKGROUND
+     */
+    public RateLimitInterceptor(TokenBucketRateLimiter limiter, int priority) {
+        this.limiter = limiter;
+        this.priority = priority;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        try {
+            limiter.acquire(priority).blockingAwait();
+        } catch (RuntimeException e) {
+            // Disposing the request interrupts the wait, which also leaves the queue
+            if(e.getCause() instanceof InterruptedException) {
+                throw new InterruptedIOException("Interrupted while waiting for a rate limit token");
+            }
+            throw e;
+        }
+
+        return chain.proceed(chain.request());
+    }
+}
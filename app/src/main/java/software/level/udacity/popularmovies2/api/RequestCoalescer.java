@@ -0,0 +1,111 @@
+package software.level.udacity.popularmovies2.api;
+
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Consumer;
+
+/**
+ * Shares a single in-flight request between every subscriber that asks for the same key and
+ * keeps the result for a short time after it arrives.
+ *
+ * While a request is running, additional subscribers join the same upstream subscription and
+ * receive the result when it arrives. Once a result has been received it is replayed to new
+ * subscribers until it expires. Errors are never retained, the next subscriber starts a new
+ * request. If every subscriber disposes before a result arrives the upstream request is
+ * cancelled and forgotten.
+ */
+public class RequestCoalescer {
+
+    // How long a completed result is replayed to new subscribers
+    private static final long RESULT_TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Returns an observable that shares the source with every other subscriber using the same key.
+     * The source should emit a single value, as the Retrofit observables do.
+     *
+     * @param key Identifies the request, typically the endpoint name and its arguments
+     * @param source Observable that performs the request
+     * @return Observable that emits the shared result
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> Observable<T> coalesce(final String key, Observable<T> source) {
+        evictExpired();
+
+        Entry existing = entries.get(key);
+        if(existing != null) {
+            if(existing.value != null) {
+                return Observable.just((T) existing.value);
+            }
+            return (Observable<T>) existing.shared;
+        }
+
+        final Entry entry = new Entry();
+        entry.shared = source
+                .doOnNext(new Consumer<T>() {
+                    @Override
+                    public void accept(T value) throws Exception {
+                        complete(entry, value);
+                    }
+                })
+                .doOnError(new Consumer<Throwable>() {
+                    @Override
+                    public void accept(Throwable throwable) throws Exception {
+                        remove(key, entry);
+                    }
+                })
+                .doOnDispose(new Action() {
+                    @Override
+                    public void run() throws Exception {
+                        remove(key, entry);
+                    }
+                })
+                .replay(1)
+                .refCount();
+
+        entries.put(key, entry);
+
+        return (Observable<T>) entry.shared;
+    }
+
+    private synchronized void complete(Entry entry, Object value) {
+        entry.value = value;
+        entry.completedAt = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Forgets an entry that has not produced a result. An entry that already has a result is
+     * kept until it expires.
+     */
+    private synchronized void remove(String key, Entry entry) {
+        if(entry.value == null && entries.get(key) == entry) {
+            entries.remove(key);
+        }
+    }
+
+    private void evictExpired() {
+        long now = SystemClock.elapsedRealtime();
+
+        Iterator<Entry> iterator = entries.values().iterator();
+        while(iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if(entry.value != null && now - entry.completedAt > RESULT_TTL_MILLIS) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class Entry {
+        Observable<?> shared;
+        Object value;
+        long completedAt;
+    }
+}
@@ -0,0 +1,34 @@
+package software.level.udacity.popularmovies2.api;
+
+import io.reactivex.Observable;
+import software.level.udacity.popularmovies2.api.model.MovieDetailsEnvelope;
+import software.level.udacity.popularmovies2.api.model.MovieEnvelope;
+
+/**
+ * MovieService decorator that retries transient failures of every request using
+ * {@link RetryWithBackoff}.
+ */
+public class ResilientMovieService implements MovieService {
+
+    private final MovieService service;
+    private final RetryWithBackoff retry = new RetryWithBackoff();
+
+    public ResilientMovieService(MovieService service) {
+        this.service = service;
+    }
+
+    @Override
+    public Observable<MovieEnvelope> getPopularMovies(String apiKey, int page, String cacheControl) {
+        return service.getPopularMovies(apiKey, page, cacheControl).retryWhen(retry);
+    }
+
+    @Override
+    public Observable<MovieEnvelope> getTopRatedMovies(String apiKey, int page, String cacheControl) {
+        return service.getTopRatedMovies(apiKey, page, cacheControl).retryWhen(retry);
+    }
+
+    @Override
+    public Observable<MovieDetailsEnvelope> getMovieDetails(int id, String apiKey, String appendToResponse) {
+        return service.getMovieDetails(id, apiKey, appendToResponse).retryWhen(retry);
+    }
+}
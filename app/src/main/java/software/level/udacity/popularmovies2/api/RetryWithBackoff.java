@@ -0,0 +1,110 @@
+package software.level.udacity.popularmovies2.api;
+
+import android.util.Log;
+
+import com.jakewharton.retrofit2.adapter.rxjava2.HttpException;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.functions.Function;
+
+/**
+ * Handler for the retryWhen operator that retries transient failures with exponential backoff.
+ *
+ * Network errors, server errors and rate limit responses are retried up to MAX_RETRIES times.
+ * The delay before each retry is picked at random between zero and an exponentially growing
+ * ceiling (full jitter) so clients that failed together do not retry together. A 429 response
+ * that carries a Retry-After header waits the requested time instead, unless it is longer than
+ * the maximum delay in which case the error is passed on. Errors from an open circuit breaker
+ * are never retried.
+ */
+public class RetryWithBackoff implements Function<Observable<Throwable>, ObservableSource<?>> {
+
+    public static final String TAG = RetryWithBackoff.class.getSimpleName();
+
+    private static final int MAX_RETRIES = 3;
+    private static final long BASE_DELAY_MILLIS = 500;
+    private static final long MAX_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private final Random random = new Random();
+
+    @Override
+    public ObservableSource<?> apply(Observable<Throwable> errors) throws Exception {
+        // This is called once per subscription so each subscriber counts its own attempts
+        final AtomicInteger attempts = new AtomicInteger();
+
+        return errors.flatMap(new Function<Throwable, ObservableSource<?>>() {
+            @Override
+            public ObservableSource<?> apply(Throwable error) throws Exception {
+                int attempt = attempts.incrementAndGet();
+
+                if(attempt > MAX_RETRIES || !isTransient(error)) {
+                    return Observable.error(error);
+                }
+
+                long delay = getDelayMillis(error, attempt);
+                if(delay > MAX_DELAY_MILLIS) {
+                    return Observable.error(error);
+                }
+
+                Log.d(TAG, "Retrying in " + delay + "ms (attempt " + attempt + "): " + error.getMessage());
+                return Observable.timer(delay, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    private static boolean isTransient(Throwable error) {
+        if(error instanceof CircuitBreakerInterceptor.CircuitOpenException) {
+            return false;
+        }
+
+        if(error instanceof HttpException) {
+            int code = ((HttpException) error).code();
+            return code == HTTP_TOO_MANY_REQUESTS || code >= 500;
+        }
+
+        return error instanceof IOException;
+    }
+
+    private long getDelayMillis(Throwable error, int attempt) {
+        if(error instanceof HttpException && ((HttpException) error).code() == HTTP_TOO_MANY_REQUESTS) {
+            long retryAfter = getRetryAfterMillis((HttpException) error);
+            if(retryAfter >= 0) {
+                return retryAfter;
+            }
+        }
+
+        long ceiling = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << (attempt - 1));
+        return (long) (random.nextDouble() * ceiling);
+    }
+
+    /**
+     * Reads the Retry-After header of a response. Only the delay-seconds form is used by the
+     * Movie Database.
+     *
+     * @return Delay in milliseconds or -1 if the header is missing or not a number of seconds
+     */
+    private static long getRetryAfterMillis(HttpException error) {
+        if(error.response() == null) {
+            return -1;
+        }
+
+        String retryAfter = error.response().headers().get("Retry-After");
+        if(retryAfter == null) {
+            return -1;
+        }
+
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
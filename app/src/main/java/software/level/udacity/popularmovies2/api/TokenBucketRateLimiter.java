@@ -0,0 +1,169 @@
+package software.level.udacity.popularmovies2.api;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
+import io.reactivex.CompletableOnSubscribe;
+import io.reactivex.functions.Cancellable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Token bucket rate limiter shared by every request made to the Movie Database.
+ *
+ * The bucket holds up to capacity tokens and refills at a fixed rate. Each request takes one
+ * token before it is made, if none are available it waits in the queue for its priority lane.
+ * Waiting user requests are always granted before waiting background requests, and background
+ * requests are only granted while a few tokens remain in reserve so a burst of background work
+ * cannot leave user requests waiting for a refill.
+ */
+public class TokenBucketRateLimiter {
+
+    public static final int PRIORITY_USER = 0;
+    public static final int PRIORITY_BACKGROUND = 1;
+
+    // Tokens that background requests leave in the bucket for user requests
+    private static final int BACKGROUND_RESERVE = 5;
+
+    private final int capacity;
+    private final long nanosPerToken;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    // Time the next scheduled drain will run, or 0 if none is scheduled
+    private long scheduledDrainNanos;
+
+    private final ArrayDeque<CompletableEmitter> userQueue = new ArrayDeque<>();
+    private final ArrayDeque<CompletableEmitter> backgroundQueue = new ArrayDeque<>();
+
+    /**
+     * Creates a rate limiter that starts with a full bucket.
+     *
+     * @param capacity Maximum number of tokens, the largest burst that is allowed
+     * @param tokensPerSecond Rate at which tokens are added to the bucket
+     */
+    public TokenBucketRateLimiter(int capacity, int tokensPerSecond) {
+        this.capacity = capacity;
+        this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / tokensPerSecond;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Creates a Completable that completes once a token has been granted for the given priority.
+     * Disposing the Completable while it waits removes it from the queue.
+     *
+     * @param priority PRIORITY_USER or PRIORITY_BACKGROUND
+     * @return Completable that completes when the request may be made
+     */
+    public Completable acquire(final int priority) {
+        return Completable.create(new CompletableOnSubscribe() {
+            @Override
+            public void subscribe(final CompletableEmitter emitter) throws Exception {
+                final ArrayDeque<CompletableEmitter> queue = getQueue(priority);
+
+                synchronized (TokenBucketRateLimiter.this) {
+                    queue.add(emitter);
+                }
+
+                emitter.setCancellable(new Cancellable() {
+                    @Override
+                    public void cancel() throws Exception {
+                        synchronized (TokenBucketRateLimiter.this) {
+                            queue.remove(emitter);
+                        }
+                    }
+                });
+
+                drain();
+            }
+        });
+    }
+
+    /**
+     * @return Number of whole tokens currently in the bucket
+     */
+    public synchronized int getAvailableTokens() {
+        refill();
+        return (int) tokens;
+    }
+
+    /**
+     * @param priority PRIORITY_USER or PRIORITY_BACKGROUND
+     * @return Number of requests waiting for a token in the lane
+     */
+    public synchronized int getQueueDepth(int priority) {
+        return getQueue(priority).size();
+    }
+
+    private ArrayDeque<CompletableEmitter> getQueue(int priority) {
+        return priority == PRIORITY_USER ? userQueue : backgroundQueue;
+    }
+
+    /**
+     * Grants tokens to as many waiting requests as possible, user lane first. The waiting
+     * requests are completed outside of the lock. If requests are still waiting afterwards a
+     * drain is scheduled for when enough tokens are available, unless an earlier one already is.
+     */
+    private void drain() {
+        List<CompletableEmitter> granted = new ArrayList<>();
+        long delayNanos = -1;
+        long drainAtNanos = 0;
+
+        synchronized (this) {
+            refill();
+
+            while(tokens >= 1 && !userQueue.isEmpty()) {
+                tokens -= 1;
+                granted.add(userQueue.poll());
+            }
+
+            while(tokens >= 1 + BACKGROUND_RESERVE && !backgroundQueue.isEmpty()) {
+                tokens -= 1;
+                granted.add(backgroundQueue.poll());
+            }
+
+            if(!userQueue.isEmpty() || !backgroundQueue.isEmpty()) {
+                double missing = (userQueue.isEmpty() ? 1 + BACKGROUND_RESERVE : 1) - tokens;
+                long delay = (long) Math.ceil(missing * nanosPerToken);
+                long drainAt = lastRefillNanos + delay;
+
+                if(scheduledDrainNanos == 0 || drainAt < scheduledDrainNanos) {
+                    scheduledDrainNanos = drainAt;
+                    drainAtNanos = drainAt;
+                    delayNanos = delay;
+                }
+            }
+        }
+
+        for(CompletableEmitter emitter : granted) {
+            emitter.onComplete();
+        }
+
+        if(delayNanos >= 0) {
+            final long drainAt = drainAtNanos;
+
+            Schedulers.computation().scheduleDirect(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (TokenBucketRateLimiter.this) {
+                        if(scheduledDrainNanos == drainAt) {
+                            scheduledDrainNanos = 0;
+                        }
+                    }
+                    drain();
+                }
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (double) (now - lastRefillNanos) / nanosPerToken);
+        lastRefillNanos = now;
+    }
+}
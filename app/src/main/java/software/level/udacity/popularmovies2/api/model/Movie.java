@@ -27,7 +27,11 @@ public class Movie implements Parcelable {
     @SerializedName("vote_average")
     public Double voteAverage;
 
-    public byte[] poster;
+    // Hash of the poster in the PosterStore, only set for favorites
+    public String posterHash;
+
+    // Time the movie was added to the favorites, only set for favorites
+    public long addedAt;
 
     public Movie() {}
 
@@ -38,7 +42,8 @@ public class Movie implements Parcelable {
         releaseDate = in.readString();
         title = in.readString();
         voteAverage = in.readDouble();
-        poster = in.createByteArray();
+        posterHash = in.readString();
+        addedAt = in.readLong();
     }
 
     public static final Creator<Movie> CREATOR = new Creator<Movie>() {
@@ -73,6 +78,7 @@ public class Movie implements Parcelable {
         dest.writeString(releaseDate);
         dest.writeString(title);
         dest.writeDouble(voteAverage);
-        dest.writeByteArray(poster);
+        dest.writeString(posterHash);
+        dest.writeLong(addedAt);
     }
 }
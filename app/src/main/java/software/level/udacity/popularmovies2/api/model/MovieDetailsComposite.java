@@ -16,4 +16,18 @@ public class MovieDetailsComposite {
         this.favorite = favorite;
     }
 
+    public MovieDetailsComposite(MovieDetailsEnvelope details, boolean favorite) {
+        this.trailers = new ArrayList<>();
+        this.reviews = new ArrayList<>();
+        this.favorite = favorite;
+
+        // The appended responses are missing if the API could not generate them
+        if(details.videos != null && details.videos.trailers != null) {
+            this.trailers.addAll(details.videos.trailers);
+        }
+        if(details.reviews != null && details.reviews.reviews != null) {
+            this.reviews.addAll(details.reviews.reviews);
+        }
+    }
+
 }
@@ -0,0 +1,23 @@
+package software.level.udacity.popularmovies2.api.model;
+
+import com.google.gson.annotations.SerializedName;
+
+public class MovieDetailsEnvelope {
+
+    // Value for the append_to_response query parameter that includes trailers and reviews
+    public static final String APPEND_VIDEOS_REVIEWS = "videos,reviews";
+
+    @SerializedName("id")
+    public Integer id;
+
+    @SerializedName("videos")
+    public MovieTrailerEnvelope videos;
+
+    @SerializedName("reviews")
+    public MovieReviewEnvelope reviews;
+
+    public MovieDetailsEnvelope(MovieTrailerEnvelope videos, MovieReviewEnvelope reviews) {
+        this.videos = videos;
+        this.reviews = reviews;
+    }
+}
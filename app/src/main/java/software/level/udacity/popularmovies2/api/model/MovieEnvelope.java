@@ -9,6 +9,7 @@ public class MovieEnvelope {
     public static final int TYPE_POPULAR = 100;
     public static final int TYPE_TOPRATED = 101;
     public static final int TYPE_FAVORITE = 102;
+    public static final int TYPE_SEARCH = 103;
 
     @SerializedName("page")
     public Integer page;
@@ -24,6 +25,13 @@ public class MovieEnvelope {
 
     public int resultType;
 
+    // Time the movies were fetched from the API, set for pages of the popular and top rated lists
+    public long fetchedAt;
+
+    // Sort key of the last movie, set when a page of favorites is read from the database
+    public long lastAddedAt;
+    public int lastMovieId;
+
     public MovieEnvelope(List<Movie> movies, int resultType) {
         this.movies = movies;
         this.resultType = resultType;
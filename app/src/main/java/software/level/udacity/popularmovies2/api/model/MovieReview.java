@@ -18,6 +18,8 @@ public class MovieReview implements Parcelable {
     @SerializedName("url")
     public String url;
 
+    public MovieReview() {}
+
     protected MovieReview(Parcel in) {
         id = in.readString();
         author = in.readString();
@@ -21,6 +21,8 @@ public class MovieTrailer implements Parcelable {
     @SerializedName("type")
     public String type;
 
+    public MovieTrailer() {}
+
     protected MovieTrailer(Parcel in) {
         id = in.readString();
         key = in.readString();
@@ -9,8 +9,11 @@ public class MovieContract {
 
     public static final Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
     public static final String PATH_FAVORITES = "favorites";
+    public static final String PATH_CATEGORIES = "categories";
+    public static final String PATH_POSTER = "poster";
+    public static final String PATH_SEARCH = "search";
 
-    public static final class MovieFavoriteEntry implements BaseColumns {
+    public static final class MovieFavoriteEntry {
 
         /*
         The content URI to access movie favorites data.
@@ -24,13 +27,163 @@ public class MovieContract {
 
         public static final String TABLE_NAME = "favorites";
 
+        // Primary key of the favorites table, there is no separate _id column
         public static final String COLUMN_MOVIEID = "movie_id";
         public static final String COLUMN_TITLE = "title";
         public static final String COLUMN_OVERVIEW = "overview";
         public static final String COLUMN_RELEASEDATE = "release_date";
         public static final String COLUMN_RATING = "vote_average";
         public static final String COLUMN_RUNTIME = "runtime";
+        public static final String COLUMN_POSTERPATH = "poster_path";
+
+        // Hash of the poster in the PosterStore, the image itself is not kept in the database
+        public static final String COLUMN_POSTER_HASH = "poster_hash";
+
+        // Time the movie was added to the favorites, set by the provider on insert
+        public static final String COLUMN_ADDED_AT = "added_at";
+
+        // Most recently added first, the movie id keeps the order stable for equal times
+        public static final String SORT_ORDER = COLUMN_ADDED_AT + " DESC, " + COLUMN_MOVIEID + " DESC";
+
+        /*
+        Query parameters to read the favorites a page at a time. The limit is the page size, the
+        next page continues after the added time and movie id of the last favorite of the previous
+        page. Pages are only available in the default sort order.
+         */
+        public static final String QUERY_LIMIT = "limit";
+        public static final String QUERY_AFTER_ADDED_AT = "after_added_at";
+        public static final String QUERY_AFTER_MOVIEID = "after_movie_id";
+
+        // Encoded poster image accepted by insert, the provider moves it to the PosterStore and
+        // stores its hash instead. The table no longer has this column.
         public static final String COLUMN_POSTER = "encoded_poster";
+
+        // Columns needed to show favorites in the grid and open their details
+        public static final String[] GRID_PROJECTION = {
+                COLUMN_MOVIEID,
+                COLUMN_TITLE,
+                COLUMN_OVERVIEW,
+                COLUMN_RELEASEDATE,
+                COLUMN_RATING,
+                COLUMN_POSTERPATH,
+                COLUMN_POSTER_HASH,
+                COLUMN_ADDED_AT
+        };
+
+        /*
+        The first page of favorites.
+
+        content://software.level.udacity.popularmovies2/favorites?limit=60
+         */
+        public static Uri buildPageUri(int limit) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+
+        /*
+        The page of favorites following the favorite with the given added time and movie id.
+
+        content://software.level.udacity.popularmovies2/favorites?limit=60&after_added_at=1487000000000&after_movie_id=550
+         */
+        public static Uri buildPageUri(int limit, long afterAddedAt, int afterMovieId) {
+            return buildPageUri(limit).buildUpon()
+                    .appendQueryParameter(QUERY_AFTER_ADDED_AT, String.valueOf(afterAddedAt))
+                    .appendQueryParameter(QUERY_AFTER_MOVIEID, String.valueOf(afterMovieId))
+                    .build();
+        }
+
+        /*
+        The poster of a favorite, opened with ContentResolver.openInputStream.
+
+        content://[CONTENT_AUTHORITY]/[PATH_FAVORITES]/[MOVIE_ID]/[PATH_POSTER]
+        content://software.level.udacity.popularmovies2/favorites/550/poster
+         */
+        public static Uri buildPosterUri(int movieId) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(String.valueOf(movieId))
+                    .appendPath(PATH_POSTER)
+                    .build();
+        }
+    }
+
+    public static final class MovieCategoryEntry implements BaseColumns {
+
+        /*
+        The content URI to access the stored movie lists. A category has to be appended.
+
+        content://[CONTENT_AUTHORITY]/[PATH_CATEGORIES]/[CATEGORY]
+        content://software.level.udacity.popularmovies2/categories/popular
+         */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_CATEGORIES)
+                .build();
+
+        public static final String TABLE_NAME = "category_movies";
+
+        public static final String CATEGORY_POPULAR = "popular";
+        public static final String CATEGORY_TOPRATED = "toprated";
+
+        // Stored lists older than this are shown but refreshed from the network
+        public static final long TTL_MILLIS = 60 * 60 * 1000;
+
+        public static final String COLUMN_CATEGORY = "category";
+        public static final String COLUMN_PAGE = "page";
+        public static final String COLUMN_RANK = "rank";
+        public static final String COLUMN_TOTAL_PAGES = "total_pages";
+        public static final String COLUMN_FETCHED_AT = "fetched_at";
+
+        public static final String COLUMN_MOVIEID = "movie_id";
+        public static final String COLUMN_TITLE = "title";
+        public static final String COLUMN_OVERVIEW = "overview";
+        public static final String COLUMN_RELEASEDATE = "release_date";
+        public static final String COLUMN_RATING = "vote_average";
         public static final String COLUMN_POSTERPATH = "poster_path";
+
+        // Rows are returned in the order the API ranked them
+        public static final String SORT_ORDER = COLUMN_PAGE + ", " + COLUMN_RANK;
+
+        public static Uri buildCategoryUri(String category) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(category)
+                    .build();
+        }
+    }
+
+    public static final class MovieSearchEntry {
+
+        /*
+        The content URI to search the favorites and the stored movie lists. The search text is
+        passed in the query parameter.
+
+        content://[CONTENT_AUTHORITY]/[PATH_SEARCH]?q=[TEXT]
+        content://software.level.udacity.popularmovies2/search?q=star%20wars
+         */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_SEARCH)
+                .build();
+
+        // Full text indexes of the title and overview of the favorites and the stored lists
+        public static final String FAVORITES_TABLE_NAME = "favorites_search";
+        public static final String CATEGORY_TABLE_NAME = "category_movies_search";
+
+        public static final String QUERY_TEXT = "q";
+        public static final String QUERY_LIMIT = "limit";
+
+        // Results are returned best match first, a movie is returned once even if it is stored
+        // several times. The poster hash is only set for favorites.
+        public static final String COLUMN_MOVIEID = "movie_id";
+        public static final String COLUMN_TITLE = "title";
+        public static final String COLUMN_OVERVIEW = "overview";
+        public static final String COLUMN_RELEASEDATE = "release_date";
+        public static final String COLUMN_RATING = "vote_average";
+        public static final String COLUMN_POSTERPATH = "poster_path";
+        public static final String COLUMN_POSTER_HASH = "poster_hash";
+
+        public static Uri buildSearchUri(String text) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_TEXT, text)
+                    .build();
+        }
     }
 }
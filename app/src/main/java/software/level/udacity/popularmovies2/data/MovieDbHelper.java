@@ -1,44 +1,325 @@
 package software.level.udacity.popularmovies2.data;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
 
+import java.io.IOException;
+
+import software.level.udacity.popularmovies2.data.MovieContract.MovieCategoryEntry;
 import software.level.udacity.popularmovies2.data.MovieContract.MovieFavoriteEntry;
+import software.level.udacity.popularmovies2.data.MovieContract.MovieSearchEntry;
 
 public class MovieDbHelper extends SQLiteOpenHelper {
 
+    public static final String TAG = MovieDbHelper.class.getSimpleName();
+
     public static final String DATABASE_NAME = "movies.db";
-    private static final int DATABASE_VERSION = 2;
+    static final int DATABASE_VERSION = 7;
+
+    // Row id of the favorites layout of version 2, later versions key the table by movie id
+    private static final String FAVORITE_ID_V2 = "_id";
+
+    // Favorites layout of version 2, the oldest version that can be upgraded. New databases
+    // start from here and run every migration, so they always match upgraded databases.
+    private static final String SQL_CREATE_FAVORITE_TABLE_V2 =
+
+        "CREATE TABLE " + MovieFavoriteEntry.TABLE_NAME + " (" +
+
+            FAVORITE_ID_V2                          + " INTEGER PRIMARY KEY AUTOINCREMENT, "    +
+            MovieFavoriteEntry.COLUMN_MOVIEID       + " INTEGER NOT NULL, "                     +
+            MovieFavoriteEntry.COLUMN_TITLE         + " TEXT, "                                 +
+            MovieFavoriteEntry.COLUMN_OVERVIEW      + " TEXT, "                                 +
+            MovieFavoriteEntry.COLUMN_RELEASEDATE   + " TEXT, "                                 +
+            MovieFavoriteEntry.COLUMN_POSTERPATH    + " TEXT, "                                 +
+            MovieFavoriteEntry.COLUMN_RATING        + " REAL, "                                 +
+            MovieFavoriteEntry.COLUMN_POSTER        + " BLOB, "                                 +
+
+        " UNIQUE (" + MovieFavoriteEntry.COLUMN_MOVIEID +") ON CONFLICT REPLACE);";
+
+    private static final String SQL_CREATE_CATEGORY_TABLE_V3 =
+
+        "CREATE TABLE " + MovieCategoryEntry.TABLE_NAME + " (" +
+
+            MovieCategoryEntry._ID                  + " INTEGER PRIMARY KEY AUTOINCREMENT, "    +
+            MovieCategoryEntry.COLUMN_CATEGORY      + " TEXT NOT NULL, "                        +
+            MovieCategoryEntry.COLUMN_PAGE          + " INTEGER NOT NULL, "                     +
+            MovieCategoryEntry.COLUMN_RANK          + " INTEGER NOT NULL, "                     +
+            MovieCategoryEntry.COLUMN_TOTAL_PAGES   + " INTEGER, "                              +
+            MovieCategoryEntry.COLUMN_FETCHED_AT    + " INTEGER NOT NULL, "                     +
+            MovieCategoryEntry.COLUMN_MOVIEID       + " INTEGER NOT NULL, "                     +
+            MovieCategoryEntry.COLUMN_TITLE         + " TEXT, "                                 +
+            MovieCategoryEntry.COLUMN_OVERVIEW      + " TEXT, "                                 +
+            MovieCategoryEntry.COLUMN_RELEASEDATE   + " TEXT, "                                 +
+            MovieCategoryEntry.COLUMN_POSTERPATH    + " TEXT, "                                 +
+            MovieCategoryEntry.COLUMN_RATING        + " REAL, "                                 +
+
+        " UNIQUE (" + MovieCategoryEntry.COLUMN_CATEGORY    + ", " +
+                      MovieCategoryEntry.COLUMN_PAGE        + ", " +
+                      MovieCategoryEntry.COLUMN_RANK        + ") ON CONFLICT REPLACE);";
+
+    // Favorites layout of version 5, keyed by the movie id without a separate row id
+    private static final String FAVORITE_TABLE_V5 = MovieFavoriteEntry.TABLE_NAME + "_v5";
+
+    private static final String SQL_CREATE_FAVORITE_TABLE_V5 =
+
+        "CREATE TABLE " + FAVORITE_TABLE_V5 + " (" +
+
+            MovieFavoriteEntry.COLUMN_MOVIEID       + " INTEGER PRIMARY KEY ON CONFLICT REPLACE, " +
+            MovieFavoriteEntry.COLUMN_TITLE         + " TEXT, "                                 +
+            MovieFavoriteEntry.COLUMN_OVERVIEW      + " TEXT, "                                 +
+            MovieFavoriteEntry.COLUMN_RELEASEDATE   + " TEXT, "                                 +
+            MovieFavoriteEntry.COLUMN_POSTERPATH    + " TEXT, "                                 +
+            MovieFavoriteEntry.COLUMN_RATING        + " REAL, "                                 +
+            MovieFavoriteEntry.COLUMN_POSTER_HASH   + " TEXT);";
+
+    private static final String FAVORITE_COLUMNS_V5 =
+            MovieFavoriteEntry.COLUMN_MOVIEID       + ", " +
+            MovieFavoriteEntry.COLUMN_TITLE         + ", " +
+            MovieFavoriteEntry.COLUMN_OVERVIEW      + ", " +
+            MovieFavoriteEntry.COLUMN_RELEASEDATE   + ", " +
+            MovieFavoriteEntry.COLUMN_POSTERPATH    + ", " +
+            MovieFavoriteEntry.COLUMN_RATING        + ", " +
+            MovieFavoriteEntry.COLUMN_POSTER_HASH;
+
+    // The provider looks favorites up by poster hash when deciding if a poster is still used
+    private static final String SQL_CREATE_FAVORITE_POSTER_INDEX =
+            "CREATE INDEX " + MovieFavoriteEntry.TABLE_NAME + "_" + MovieFavoriteEntry.COLUMN_POSTER_HASH +
+            " ON " + MovieFavoriteEntry.TABLE_NAME + " (" + MovieFavoriteEntry.COLUMN_POSTER_HASH + ");";
+
+    // Index entries are ordered by the added time and then the movie id, the table's row id, which
+    // is the favorites sort order. A page is read by seeking into the index instead of skipping rows.
+    private static final String SQL_CREATE_FAVORITE_ADDED_AT_INDEX =
+            "CREATE INDEX " + MovieFavoriteEntry.TABLE_NAME + "_" + MovieFavoriteEntry.COLUMN_ADDED_AT +
+            " ON " + MovieFavoriteEntry.TABLE_NAME + " (" + MovieFavoriteEntry.COLUMN_ADDED_AT + ");";
+
+    /*
+    Every schema change is a migration to the next version. Migrations keep the existing data and
+    run in order inside the upgrade transaction, so a failed migration leaves the database at the
+    old version. Add new migrations at the end and increase DATABASE_VERSION to match.
+     */
+    private final Migration[] migrations = new Migration[] {
+
+        // Stored popular and top rated lists
+        new Migration(3) {
+            @Override
+            void migrate(SQLiteDatabase db) {
+                db.execSQL(SQL_CREATE_CATEGORY_TABLE_V3);
+            }
+        },
+
+        // Posters moved out of the favorites table into the PosterStore
+        new Migration(4) {
+            @Override
+            void migrate(SQLiteDatabase db) {
+                db.execSQL("ALTER TABLE " + MovieFavoriteEntry.TABLE_NAME +
+                        " ADD COLUMN " + MovieFavoriteEntry.COLUMN_POSTER_HASH + " TEXT");
+                movePostersToStore(db);
+            }
+        },
+
+        // Favorites keyed by movie id, the empty poster column is dropped and poster hashes indexed
+        new Migration(5) {
+            @Override
+            void migrate(SQLiteDatabase db) {
+                db.execSQL(SQL_CREATE_FAVORITE_TABLE_V5);
+                db.execSQL("INSERT INTO " + FAVORITE_TABLE_V5 + " (" + FAVORITE_COLUMNS_V5 + ")" +
+                        " SELECT " + FAVORITE_COLUMNS_V5 + " FROM " + MovieFavoriteEntry.TABLE_NAME);
+                db.execSQL("DROP TABLE " + MovieFavoriteEntry.TABLE_NAME);
+                db.execSQL("ALTER TABLE " + FAVORITE_TABLE_V5 + " RENAME TO " + MovieFavoriteEntry.TABLE_NAME);
+                db.execSQL(SQL_CREATE_FAVORITE_POSTER_INDEX);
+            }
+        },
+
+        // Favorites ordered by the time they were added and read a page at a time. Existing
+        // favorites have no known time and sort after every favorite added from now on.
+        new Migration(6) {
+            @Override
+            void migrate(SQLiteDatabase db) {
+                db.execSQL("ALTER TABLE " + MovieFavoriteEntry.TABLE_NAME +
+                        " ADD COLUMN " + MovieFavoriteEntry.COLUMN_ADDED_AT + " INTEGER NOT NULL DEFAULT 0");
+                db.execSQL(SQL_CREATE_FAVORITE_ADDED_AT_INDEX);
+            }
+        },
+
+        // Full text search over the favorites and the stored lists
+        new Migration(7) {
+            @Override
+            void migrate(SQLiteDatabase db) {
+                createSearchIndex(db, MovieSearchEntry.FAVORITES_TABLE_NAME,
+                        MovieFavoriteEntry.TABLE_NAME, MovieFavoriteEntry.COLUMN_MOVIEID,
+                        MovieFavoriteEntry.COLUMN_MOVIEID + " = new." + MovieFavoriteEntry.COLUMN_MOVIEID);
+
+                createSearchIndex(db, MovieSearchEntry.CATEGORY_TABLE_NAME,
+                        MovieCategoryEntry.TABLE_NAME, MovieCategoryEntry._ID,
+                        MovieCategoryEntry.COLUMN_CATEGORY + " = new." + MovieCategoryEntry.COLUMN_CATEGORY +
+                        " AND " + MovieCategoryEntry.COLUMN_PAGE + " = new." + MovieCategoryEntry.COLUMN_PAGE +
+                        " AND " + MovieCategoryEntry.COLUMN_RANK + " = new." + MovieCategoryEntry.COLUMN_RANK);
+            }
+        }
+    };
+
+    // Version the database is created or upgraded to
+    private final int version;
 
     public MovieDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME, DATABASE_VERSION);
+    }
+
+    /**
+     * Opens a database at an older version, so tests can create a database the way an earlier
+     * release of the app left it and then upgrade it.
+     *
+     * @param context Context used to locate the database
+     * @param name Name of the database file
+     * @param version Version to create or upgrade to, from 2 up to the current version
+     */
+    MovieDbHelper(Context context, String name, int version) {
+        super(context, name, null, version);
+        this.version = version;
+
+        // With write-ahead logging the framework keeps a pool of read connections next to the
+        // write connection, so queries on other threads read the last committed state instead
+        // of waiting for a write to finish
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_FAVORITE_TABLE_V2);
+        migrate(db, 2, version);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Version 1 was never released with a favorites layout that can be carried forward
+        if(oldVersion < 2) {
+            db.execSQL("DROP TABLE IF EXISTS " + MovieFavoriteEntry.TABLE_NAME);
+            db.execSQL("DROP TABLE IF EXISTS " + MovieCategoryEntry.TABLE_NAME);
+            onCreate(db);
+            return;
+        }
+
+        migrate(db, oldVersion, newVersion);
+    }
+
+    /**
+     * Runs the migrations after the old version up to and including the new version.
+     */
+    private void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        for(Migration migration : migrations) {
+            if(migration.version <= oldVersion || migration.version > newVersion) {
+                continue;
+            }
+
+            migration.migrate(db);
+        }
+    }
+
+    /**
+     * Creates an FTS4 index of the title and overview of a table and the triggers that keep it in
+     * sync. The index only stores the terms, the text is read from the table itself, and the row
+     * id of the table is the docid of the index.
+     *
+     * Both tables replace a row when a unique key conflicts. That delete does not fire delete
+     * triggers, so the insert trigger first removes the index entry of the row that is about to be
+     * replaced while the row can still be read.
+     *
+     * @param db Database being upgraded
+     * @param index Name of the index to create
+     * @param table Table to index
+     * @param rowId Column that is the row id of the table
+     * @param conflict Condition that selects the row an insert replaces, in terms of new
+     */
+    private static void createSearchIndex(SQLiteDatabase db, String index, String table,
+                                          String rowId, String conflict) {
+        String title = MovieFavoriteEntry.COLUMN_TITLE;
+        String overview = MovieFavoriteEntry.COLUMN_OVERVIEW;
+
+        db.execSQL("CREATE VIRTUAL TABLE " + index + " USING fts4(content=\"" + table + "\", " +
+                title + ", " + overview + ")");
+
+        db.execSQL("CREATE TRIGGER " + index + "_before_insert BEFORE INSERT ON " + table + " BEGIN " +
+                "DELETE FROM " + index + " WHERE docid IN (SELECT " + rowId + " FROM " + table +
+                " WHERE " + conflict + "); END");
 
-        final String SQL_CREATE_FAVORITE_TABLE =
+        db.execSQL("CREATE TRIGGER " + index + "_after_insert AFTER INSERT ON " + table + " BEGIN " +
+                "INSERT INTO " + index + " (docid, " + title + ", " + overview + ")" +
+                " VALUES (new." + rowId + ", new." + title + ", new." + overview + "); END");
 
-            "CREATE TABLE " + MovieFavoriteEntry.TABLE_NAME + " (" +
+        db.execSQL("CREATE TRIGGER " + index + "_before_update BEFORE UPDATE ON " + table + " BEGIN " +
+                "DELETE FROM " + index + " WHERE docid = old." + rowId + "; END");
 
-                MovieFavoriteEntry._ID                  + " INTEGER PRIMARY KEY AUTOINCREMENT, "    +
-                MovieFavoriteEntry.COLUMN_MOVIEID       + " INTEGER NOT NULL, "                     +
-                MovieFavoriteEntry.COLUMN_TITLE         + " TEXT, "                                 +
-                MovieFavoriteEntry.COLUMN_OVERVIEW      + " TEXT, "                                 +
-                MovieFavoriteEntry.COLUMN_RELEASEDATE   + " TEXT, "                                 +
-                MovieFavoriteEntry.COLUMN_POSTERPATH    + " TEXT, "                                 +
-                MovieFavoriteEntry.COLUMN_RATING        + " REAL, "                                 +
-                MovieFavoriteEntry.COLUMN_POSTER        + " BLOB, "                                 +
+        db.execSQL("CREATE TRIGGER " + index + "_after_update AFTER UPDATE ON " + table + " BEGIN " +
+                "INSERT INTO " + index + " (docid, " + title + ", " + overview + ")" +
+                " VALUES (new." + rowId + ", new." + title + ", new." + overview + "); END");
 
-            " UNIQUE (" + MovieFavoriteEntry.COLUMN_MOVIEID +") ON CONFLICT REPLACE);";
+        db.execSQL("CREATE TRIGGER " + index + "_before_delete BEFORE DELETE ON " + table + " BEGIN " +
+                "DELETE FROM " + index + " WHERE docid = old." + rowId + "; END");
 
-        db.execSQL(SQL_CREATE_FAVORITE_TABLE);
+        // Index the rows that are already stored
+        db.execSQL("INSERT INTO " + index + " (docid, " + title + ", " + overview + ")" +
+                " SELECT " + rowId + ", " + title + ", " + overview + " FROM " + table);
     }
 
-    @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + MovieFavoriteEntry.TABLE_NAME);
-        onCreate(db);
+    /**
+     * Writes every poster stored in the favorites table to the PosterStore and replaces it with
+     * its hash. SQLite can not drop the old column, it is left empty instead. Posters are read one
+     * row at a time so a large poster never has to share a cursor window with the others.
+     */
+    private void movePostersToStore(SQLiteDatabase db) {
+        PosterStore store = PosterStore.getInstance();
+
+        Cursor ids = db.query(MovieFavoriteEntry.TABLE_NAME,
+                new String[]{MovieFavoriteEntry.COLUMN_MOVIEID},
+                MovieFavoriteEntry.COLUMN_POSTER + " IS NOT NULL",
+                null, null, null, null);
+
+        try {
+            while(ids.moveToNext()) {
+                String[] selectionArgs = new String[]{ids.getString(0)};
+
+                Cursor poster = db.query(MovieFavoriteEntry.TABLE_NAME,
+                        new String[]{MovieFavoriteEntry.COLUMN_POSTER},
+                        MovieFavoriteEntry.COLUMN_MOVIEID + " = ? ",
+                        selectionArgs, null, null, null);
+
+                ContentValues values = new ContentValues();
+                values.putNull(MovieFavoriteEntry.COLUMN_POSTER);
+
+                try {
+                    if(poster.moveToFirst()) {
+                        values.put(MovieFavoriteEntry.COLUMN_POSTER_HASH, store.put(poster.getBlob(0)));
+                    }
+                } catch (IOException e) {
+                    // Without a hash the poster is loaded from the web instead
+                    Log.e(TAG, "movePostersToStore: Problem storing poster, dropping it", e);
+                } finally {
+                    poster.close();
+                }
+
+                db.update(MovieFavoriteEntry.TABLE_NAME, values,
+                        MovieFavoriteEntry.COLUMN_MOVIEID + " = ? ", selectionArgs);
+            }
+        } finally {
+            ids.close();
+        }
+    }
+
+    /**
+     * Upgrades the schema from the previous version to {@link #version}.
+     */
+    private static abstract class Migration {
+
+        final int version;
+
+        Migration(int version) {
+            this.version = version;
+        }
+
+        abstract void migrate(SQLiteDatabase db);
     }
 }
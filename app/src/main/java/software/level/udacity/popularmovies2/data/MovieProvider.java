@@ -1,21 +1,94 @@
 package software.level.udacity.popularmovies2.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.ParcelFileDescriptor;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.util.Log;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import software.level.udacity.popularmovies2.data.MovieContract.MovieCategoryEntry;
 import software.level.udacity.popularmovies2.data.MovieContract.MovieFavoriteEntry;
+import software.level.udacity.popularmovies2.data.MovieContract.MovieSearchEntry;
 
 public class MovieProvider extends ContentProvider {
 
+    public static final String TAG = MovieProvider.class.getSimpleName();
+
     private MovieDbHelper dbHelper;
+    private PosterStore posterStore;
+
+    // Batch in progress on each thread, see beginBatch
+    private final ThreadLocal<Batch> batches = new ThreadLocal<>();
 
     public static final int CODE_FAVORITES = 100;
     public static final int CODE_FAVORITES_WITH_ID = 101;
+    public static final int CODE_FAVORITE_POSTER = 102;
+    public static final int CODE_CATEGORY = 200;
+    public static final int CODE_SEARCH = 300;
+
+    // Most search results returned when the uri does not set a limit
+    private static final String SEARCH_LIMIT = "50";
+
+    /*
+    Searches the favorites and the stored lists. Every movie that matches is ranked, title matches
+    before matches in the overview only and favorites before stored lists. A movie stored more
+    than once is returned once with its best rank. Bare columns of a MIN aggregate are taken from
+    the row with the minimum, so the favorite row and its poster hash win over a stored list.
+     */
+    private static final String SQL_SEARCH =
+            "SELECT " +
+                    MovieSearchEntry.COLUMN_MOVIEID + ", " +
+                    MovieSearchEntry.COLUMN_TITLE + ", " +
+                    MovieSearchEntry.COLUMN_OVERVIEW + ", " +
+                    MovieSearchEntry.COLUMN_RELEASEDATE + ", " +
+                    MovieSearchEntry.COLUMN_RATING + ", " +
+                    MovieSearchEntry.COLUMN_POSTERPATH + ", " +
+                    MovieSearchEntry.COLUMN_POSTER_HASH + ", " +
+                    "MIN(search_rank) AS best_rank" +
+            " FROM (" +
+                    selectMatches(MovieFavoriteEntry.TABLE_NAME, MovieFavoriteEntry.COLUMN_MOVIEID,
+                            MovieSearchEntry.FAVORITES_TABLE_NAME, MovieFavoriteEntry.COLUMN_POSTER_HASH, 0) +
+                    " UNION ALL " +
+                    selectMatches(MovieCategoryEntry.TABLE_NAME, MovieCategoryEntry._ID,
+                            MovieSearchEntry.CATEGORY_TABLE_NAME, "NULL", 1) +
+                    " UNION ALL " +
+                    selectMatches(MovieFavoriteEntry.TABLE_NAME, MovieFavoriteEntry.COLUMN_MOVIEID,
+                            MovieSearchEntry.FAVORITES_TABLE_NAME, MovieFavoriteEntry.COLUMN_POSTER_HASH, 2) +
+                    " UNION ALL " +
+                    selectMatches(MovieCategoryEntry.TABLE_NAME, MovieCategoryEntry._ID,
+                            MovieSearchEntry.CATEGORY_TABLE_NAME, "NULL", 3) +
+            ")" +
+            " GROUP BY " + MovieSearchEntry.COLUMN_MOVIEID +
+            " ORDER BY best_rank, " + MovieSearchEntry.COLUMN_TITLE +
+            " LIMIT ?";
+
+    private static final String[] SEARCH_COLUMNS = {
+            MovieSearchEntry.COLUMN_MOVIEID,
+            MovieSearchEntry.COLUMN_TITLE,
+            MovieSearchEntry.COLUMN_OVERVIEW,
+            MovieSearchEntry.COLUMN_RELEASEDATE,
+            MovieSearchEntry.COLUMN_RATING,
+            MovieSearchEntry.COLUMN_POSTERPATH,
+            MovieSearchEntry.COLUMN_POSTER_HASH,
+            "best_rank"
+    };
 
     private static UriMatcher matcher;
 
@@ -29,10 +102,26 @@ public class MovieProvider extends ContentProvider {
         // content://software.level.udacity.popularmovies2/favorites/#
         matcher.addURI(MovieContract.CONTENT_AUTHORITY, MovieContract.PATH_FAVORITES + "/#",
                 CODE_FAVORITES_WITH_ID);
+
+        // content://software.level.udacity.popularmovies2/favorites/#/poster
+        matcher.addURI(MovieContract.CONTENT_AUTHORITY,
+                MovieContract.PATH_FAVORITES + "/#/" + MovieContract.PATH_POSTER,
+                CODE_FAVORITE_POSTER);
+
+        // content://software.level.udacity.popularmovies2/categories/*
+        matcher.addURI(MovieContract.CONTENT_AUTHORITY, MovieContract.PATH_CATEGORIES + "/*",
+                CODE_CATEGORY);
+
+        // content://software.level.udacity.popularmovies2/search
+        matcher.addURI(MovieContract.CONTENT_AUTHORITY, MovieContract.PATH_SEARCH, CODE_SEARCH);
     }
 
     @Override
     public boolean onCreate() {
+        // Providers are created before the application, so the poster store is set up here
+        PosterStore.initializePosterStore(getContext());
+        posterStore = PosterStore.getInstance();
+
         dbHelper = new MovieDbHelper(getContext());
         return true;
     }
@@ -47,6 +136,25 @@ public class MovieProvider extends ContentProvider {
 
             case CODE_FAVORITES:
 
+                String afterAddedAt = uri.getQueryParameter(MovieFavoriteEntry.QUERY_AFTER_ADDED_AT);
+                String afterMovieId = uri.getQueryParameter(MovieFavoriteEntry.QUERY_AFTER_MOVIEID);
+
+                // Continue after the last favorite of the previous page in the sort order. The
+                // added_at <= ? term bounds the range read from the added_at index, an OR of the
+                // two cases on its own makes SQLite scan the whole table.
+                if(afterAddedAt != null && afterMovieId != null) {
+                    if(sortOrder != null) {
+                        throw new IllegalArgumentException("Pages of favorites are only available in the default sort order: " + uri);
+                    }
+
+                    selection = (selection == null ? "" : "(" + selection + ") AND ") +
+                            "(" + MovieFavoriteEntry.COLUMN_ADDED_AT + " <= ? AND (" +
+                            MovieFavoriteEntry.COLUMN_ADDED_AT + " < ? OR " +
+                            MovieFavoriteEntry.COLUMN_MOVIEID + " < ?))";
+                    selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                            new String[]{afterAddedAt, afterAddedAt, afterMovieId});
+                }
+
                 cursor = dbHelper.getReadableDatabase().query(
                         MovieFavoriteEntry.TABLE_NAME,
                         projection,
@@ -54,7 +162,8 @@ public class MovieProvider extends ContentProvider {
                         selectionArgs,
                         null,
                         null,
-                        sortOrder);
+                        sortOrder == null ? MovieFavoriteEntry.SORT_ORDER : sortOrder,
+                        uri.getQueryParameter(MovieFavoriteEntry.QUERY_LIMIT));
                 break;
 
             case CODE_FAVORITES_WITH_ID:
@@ -71,6 +180,27 @@ public class MovieProvider extends ContentProvider {
                         sortOrder);
                 break;
 
+            case CODE_CATEGORY:
+
+                selectionArgs = new String[]{uri.getLastPathSegment()};
+
+                cursor = dbHelper.getReadableDatabase().query(
+                        MovieCategoryEntry.TABLE_NAME,
+                        projection,
+                        MovieCategoryEntry.COLUMN_CATEGORY + " = ? ",
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder == null ? MovieCategoryEntry.SORT_ORDER : sortOrder);
+                break;
+
+            case CODE_SEARCH:
+
+                // Results change with the favorites and the stored lists, so watch everything
+                cursor = search(uri);
+                cursor.setNotificationUri(getContext().getContentResolver(), MovieContract.BASE_CONTENT_URI);
+                return cursor;
+
             default:
                 throw new UnsupportedOperationException("Invalid uri for query: " + uri);
 
@@ -80,36 +210,267 @@ public class MovieProvider extends ContentProvider {
         return cursor;
     }
 
+    /**
+     * Searches the title and overview of the favorites and the stored lists for the words in the
+     * query parameter of the uri. Every word has to match the start of a word in the movie, so
+     * results are found while the user is still typing. Projection, selection and sort order are
+     * fixed, see {@link MovieSearchEntry}.
+     *
+     * @return Cursor with the matching movies, empty if the search text has no words
+     */
+    private Cursor search(Uri uri) {
+        String text = uri.getQueryParameter(MovieSearchEntry.QUERY_TEXT);
+        String limit = uri.getQueryParameter(MovieSearchEntry.QUERY_LIMIT);
+
+        String titleMatch = buildMatchQuery(text, MovieSearchEntry.COLUMN_TITLE);
+        String anyMatch = buildMatchQuery(text, null);
+
+        if(anyMatch == null) {
+            return new MatrixCursor(SEARCH_COLUMNS);
+        }
+
+        return dbHelper.getReadableDatabase().rawQuery(SQL_SEARCH, new String[]{
+                titleMatch, titleMatch, anyMatch, anyMatch, limit == null ? SEARCH_LIMIT : limit});
+    }
+
+    /**
+     * Turns search text into an FTS query that matches the start of every word in the text.
+     * Anything other than letters and digits separates words, so the text can not contain FTS
+     * operators.
+     *
+     * @param text Text entered by the user
+     * @param column Column to match or null to match every indexed column
+     * @return FTS query or null if the text has no words
+     */
+    private static String buildMatchQuery(String text, String column) {
+        if(text == null) {
+            return null;
+        }
+
+        StringBuilder query = new StringBuilder();
+        StringBuilder word = new StringBuilder();
+
+        for(int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+
+            if(Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if(word.length() > 0) {
+                if(query.length() > 0) {
+                    query.append(' ');
+                }
+                if(column != null) {
+                    query.append(column).append(':');
+                }
+                query.append(word).append('*');
+
+                word.setLength(0);
+            }
+        }
+
+        return query.length() == 0 ? null : query.toString();
+    }
+
+    /**
+     * Builds a select of the movies in a table whose row matches the FTS query bound to it.
+     */
+    private static String selectMatches(String table, String rowId, String index,
+                                        String posterHash, int rank) {
+        return "SELECT " +
+                MovieSearchEntry.COLUMN_MOVIEID + ", " +
+                MovieSearchEntry.COLUMN_TITLE + ", " +
+                MovieSearchEntry.COLUMN_OVERVIEW + ", " +
+                MovieSearchEntry.COLUMN_RELEASEDATE + ", " +
+                MovieSearchEntry.COLUMN_RATING + ", " +
+                MovieSearchEntry.COLUMN_POSTERPATH + ", " +
+                posterHash + " AS " + MovieSearchEntry.COLUMN_POSTER_HASH + ", " +
+                rank + " AS search_rank" +
+                " FROM " + table +
+                " WHERE " + rowId + " IN (SELECT docid FROM " + index + " WHERE " + index + " MATCH ?)";
+    }
+
     @Nullable @Override
     public Uri insert(@NonNull Uri uri, ContentValues values) {
 
         switch(matcher.match(uri)) {
 
             case CODE_FAVORITES:
+                break;
 
-                // Insert the item into the favorites table
-                long rowId = dbHelper.getWritableDatabase().insert(MovieFavoriteEntry.TABLE_NAME,
-                        null,
-                        values);
+            default:
+                throw new IllegalArgumentException("Invalid uri for insert: " + uri);
+        }
+
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        Batch batch = beginBatch();
+        boolean successful = false;
 
-                // If the insertion was successful notify that a change occurred and return the uri
-                if(rowId != -1) {
-                    Uri insertedUri = MovieFavoriteEntry.CONTENT_URI.buildUpon()
-                            .appendPath(values.get(MovieFavoriteEntry.COLUMN_MOVIEID).toString())
-                            .build();
+        try {
+            values = storePoster(values);
 
-                    getContext().getContentResolver().notifyChange(insertedUri, null);
+            db.beginTransactionNonExclusive();
+            try {
+                Uri insertedUri = insertFavorite(db, values);
 
-                    return insertedUri;
+                commitBatch(batch);
+                db.setTransactionSuccessful();
+                successful = true;
+
+                return insertedUri;
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            endBatch(batch, successful);
+        }
+    }
+
+    /**
+     * Inserts many rows in a single transaction and sends a single change notification.
+     *
+     * For favorites every value is inserted as by {@link #insert(Uri, ContentValues)}. For a
+     * category the values are a page of a movie list and the category is taken from the uri.
+     * Writing the first page replaces everything that is stored for the category so the list
+     * always reflects a single fetch.
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+
+        int match = matcher.match(uri);
+        if(match != CODE_FAVORITES && match != CODE_CATEGORY) {
+            throw new IllegalArgumentException("Invalid uri for bulk insert: " + uri);
+        }
+
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        Batch batch = beginBatch();
+        boolean successful = false;
+        int numRowsInserted = 0;
+
+        try {
+            if(match == CODE_FAVORITES) {
+                ContentValues[] favorites = new ContentValues[values.length];
+                for(int i = 0; i < values.length; i++) {
+                    favorites[i] = storePoster(values[i]);
                 }
+                values = favorites;
+            }
+
+            db.beginTransactionNonExclusive();
+            try {
+                if(match == CODE_CATEGORY) {
+                    numRowsInserted = insertCategoryPage(db, uri, values);
+                } else {
+                    for(ContentValues value : values) {
+                        if(insertFavorite(db, value) != null) {
+                            numRowsInserted++;
+                        }
+                    }
+                }
+
+                commitBatch(batch);
+                db.setTransactionSuccessful();
+                successful = true;
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            endBatch(batch, successful);
+        }
 
+        return numRowsInserted;
+    }
+
+    /**
+     * Applies every operation in a single transaction. Change notifications are held back until
+     * the transaction commits and sent once per changed uri, or once for all favorites if several
+     * favorites changed. If an operation fails nothing is written and nothing is notified.
+     */
+    @NonNull @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        Batch batch = beginBatch();
+        boolean successful = false;
+
+        db.beginTransactionNonExclusive();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+
+            commitBatch(batch);
+            db.setTransactionSuccessful();
+            successful = true;
+
+            return results;
+        } finally {
+            db.endTransaction();
+            endBatch(batch, successful);
+        }
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+
+        switch(matcher.match(uri)) {
+
+            case CODE_FAVORITES:
+                break;
+
+            case CODE_FAVORITES_WITH_ID:
+                selection = MovieFavoriteEntry.COLUMN_MOVIEID + " = ? ";
+                selectionArgs = new String[]{uri.getLastPathSegment()};
                 break;
 
             default:
-                throw new IllegalArgumentException("Invalid uri for insert: " + uri);
+                throw new UnsupportedOperationException("Invalid uri for update: " + uri);
+        }
+
+        // Only the columns present in the values are changed
+        if(values == null || values.size() == 0) {
+            return 0;
+        }
+
+        // A new poster replaces the old one, which may no longer be referenced afterwards
+        boolean replacesPoster = values.containsKey(MovieFavoriteEntry.COLUMN_POSTER)
+                || values.containsKey(MovieFavoriteEntry.COLUMN_POSTER_HASH);
+
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        Batch batch = beginBatch();
+        boolean successful = false;
+        int numRowsUpdated;
+
+        try {
+            values = storePoster(values);
+
+            db.beginTransactionNonExclusive();
+            try {
+                List<String> replacedPosters = replacesPoster
+                        ? getPosterHashes(selection, selectionArgs)
+                        : new ArrayList<String>();
+
+                numRowsUpdated = values.size() == 0 ? 0 : db.update(
+                        MovieFavoriteEntry.TABLE_NAME,
+                        values,
+                        selection,
+                        selectionArgs);
+
+                releasePosters(replacedPosters);
+
+                if(numRowsUpdated != 0) {
+                    notifyChange(uri);
+                }
+
+                commitBatch(batch);
+                db.setTransactionSuccessful();
+                successful = true;
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            endBatch(batch, successful);
         }
 
-        return null;
+        return numRowsUpdated;
     }
 
     @Override
@@ -121,34 +482,355 @@ public class MovieProvider extends ContentProvider {
 
             case CODE_FAVORITES_WITH_ID:
 
+                selection = MovieFavoriteEntry.COLUMN_MOVIEID + " = ? ";
                 selectionArgs = new String[]{uri.getLastPathSegment()};
 
-                numRowsDeleted = dbHelper.getWritableDatabase().delete(
-                        MovieFavoriteEntry.TABLE_NAME,
-                        MovieFavoriteEntry.COLUMN_MOVIEID + " = ? ",
-                        selectionArgs);
-
                 break;
 
             default:
                 throw new UnsupportedOperationException("Invalid uri for delete: " + uri);
         }
 
-        /* If we actually deleted any rows, notify that a change has occurred to this URI */
-        if (numRowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        Batch batch = beginBatch();
+        boolean successful = false;
+
+        db.beginTransactionNonExclusive();
+        try {
+            List<String> deletedPosters = getPosterHashes(selection, selectionArgs);
+
+            numRowsDeleted = db.delete(
+                    MovieFavoriteEntry.TABLE_NAME,
+                    selection,
+                    selectionArgs);
+
+            releasePosters(deletedPosters);
+
+            /* If we actually deleted any rows, notify that a change has occurred to this URI */
+            if (numRowsDeleted != 0) {
+                notifyChange(uri);
+            }
+
+            commitBatch(batch);
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            db.endTransaction();
+            endBatch(batch, successful);
         }
 
         return numRowsDeleted;
     }
 
+    /**
+     * Inserts or replaces a favorite, must be called inside a transaction.
+     *
+     * @param values Values returned by {@link #storePoster(ContentValues)}
+     * @return Uri of the favorite or null if it could not be inserted
+     */
+    private Uri insertFavorite(SQLiteDatabase db, ContentValues values) {
+        if(!values.containsKey(MovieFavoriteEntry.COLUMN_ADDED_AT)) {
+            values.put(MovieFavoriteEntry.COLUMN_ADDED_AT, System.currentTimeMillis());
+        }
+
+        // Inserting replaces an existing favorite, remember its poster in case it changed
+        String movieId = values.getAsString(MovieFavoriteEntry.COLUMN_MOVIEID);
+        List<String> replacedPosters = movieId == null
+                ? new ArrayList<String>()
+                : getPosterHashes(MovieFavoriteEntry.COLUMN_MOVIEID + " = ? ", new String[]{movieId});
+
+        // Insert the item into the favorites table
+        long rowId = db.insert(MovieFavoriteEntry.TABLE_NAME, null, values);
+
+        releasePosters(replacedPosters);
+
+        // If the insertion was successful notify that a change occurred and return the uri
+        if(rowId == -1) {
+            return null;
+        }
+
+        Uri insertedUri = MovieFavoriteEntry.CONTENT_URI.buildUpon()
+                .appendPath(movieId)
+                .build();
+
+        notifyChange(insertedUri);
+
+        return insertedUri;
+    }
+
+    /**
+     * Stores a page of a movie list, must be called inside a transaction.
+     *
+     * @return Number of movies inserted
+     */
+    private int insertCategoryPage(SQLiteDatabase db, Uri uri, ContentValues[] values) {
+        String category = uri.getLastPathSegment();
+        int numRowsInserted = 0;
+
+        Integer page = values.length > 0
+                ? values[0].getAsInteger(MovieCategoryEntry.COLUMN_PAGE)
+                : null;
+
+        if(page != null && page == 1) {
+            db.delete(MovieCategoryEntry.TABLE_NAME,
+                    MovieCategoryEntry.COLUMN_CATEGORY + " = ? ",
+                    new String[]{category});
+        }
+
+        for(ContentValues value : values) {
+            // The caller's values are left untouched, the category is added to a copy
+            value = new ContentValues(value);
+            value.put(MovieCategoryEntry.COLUMN_CATEGORY, category);
+
+            if(db.insert(MovieCategoryEntry.TABLE_NAME, null, value) != -1) {
+                numRowsInserted++;
+            }
+        }
+
+        if(numRowsInserted != 0) {
+            notifyChange(uri);
+        }
+
+        return numRowsInserted;
+    }
+
+    /**
+     * Starts collecting change notifications and released posters for the calling thread
+     * instead of handling them right away.
+     *
+     * @return New batch or null if the thread is already in a batch, the outer batch then
+     * collects everything
+     */
+    private Batch beginBatch() {
+        if(batches.get() != null) {
+            return null;
+        }
+
+        Batch batch = new Batch();
+        batches.set(batch);
+        return batch;
+    }
+
+    /**
+     * Removes the posters released by the batch that are no longer referenced. Must be called
+     * inside the batch's transaction right before it is marked successful, so no other write can
+     * reference a poster between the check and the delete.
+     *
+     * @param batch Batch returned by {@link #beginBatch()}
+     */
+    private void commitBatch(Batch batch) {
+        if(batch == null) {
+            return;
+        }
+
+        removeUnreferencedPosters(batch.releasedPosters);
+    }
+
+    /**
+     * Ends a batch once its transaction has ended. If the transaction committed the collected
+     * notifications are sent. If it was rolled back posters written for it are removed again
+     * unless something else references them.
+     *
+     * @param batch Batch returned by {@link #beginBatch()}
+     * @param successful True if the transaction committed
+     */
+    private void endBatch(Batch batch, boolean successful) {
+        if(batch == null) {
+            return;
+        }
+
+        batches.remove();
+
+        if(!successful) {
+            removeUnreferencedPosters(batch.storedPosters);
+            return;
+        }
+
+        Set<Uri> uris = batch.changedUris;
+
+        int changedFavorites = 0;
+        for(Uri uri : uris) {
+            if(matcher.match(uri) == CODE_FAVORITES_WITH_ID) {
+                changedFavorites++;
+            }
+        }
+
+        // Several changed favorites are reported as a single change to all favorites, a single
+        // changed favorite keeps its own uri so observers can apply just that change
+        if(changedFavorites > 1) {
+            Set<Uri> coalesced = new LinkedHashSet<>();
+            for(Uri uri : uris) {
+                coalesced.add(matcher.match(uri) == CODE_FAVORITES_WITH_ID
+                        ? MovieFavoriteEntry.CONTENT_URI
+                        : uri);
+            }
+            uris = coalesced;
+        }
+
+        for(Uri uri : uris) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+    /**
+     * Notifies observers of a change, or holds the notification until the current batch commits.
+     */
+    private void notifyChange(Uri uri) {
+        Batch batch = batches.get();
+
+        if(batch != null) {
+            batch.changedUris.add(uri);
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+    /**
+     * Removes posters that may no longer be referenced, or holds them until the current batch
+     * is about to commit so a rolled back delete never loses a poster.
+     */
+    private void releasePosters(List<String> hashes) {
+        Batch batch = batches.get();
+
+        if(batch != null) {
+            batch.releasedPosters.addAll(hashes);
+        } else {
+            removeUnreferencedPosters(hashes);
+        }
+    }
+
+    /**
+     * Moves the encoded poster out of the values into the poster store and replaces it with its
+     * hash. If the poster can not be written the favorite is stored without one.
+     *
+     * Writing and syncing the file takes far longer than writing the row, so this is called before
+     * the write transaction starts and only the hash is recorded inside it. A file left behind by a
+     * transaction that rolls back is removed when the batch ends.
+     *
+     * @param values Values for a favorites row, not modified
+     * @return Copy of the values with the poster hash in place of the poster
+     */
+    private ContentValues storePoster(ContentValues values) {
+        values = new ContentValues(values);
+
+        byte[] poster = values.getAsByteArray(MovieFavoriteEntry.COLUMN_POSTER);
+        values.remove(MovieFavoriteEntry.COLUMN_POSTER);
+
+        if(poster == null) {
+            return values;
+        }
+
+        try {
+            String hash = posterStore.put(poster);
+            values.put(MovieFavoriteEntry.COLUMN_POSTER_HASH, hash);
+
+            Batch batch = batches.get();
+            if(batch != null) {
+                batch.storedPosters.add(hash);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "storePoster: Problem storing poster, saving favorite without it", e);
+        }
+
+        return values;
+    }
+
+    /**
+     * @return Poster hashes referenced by the favorites that match the selection
+     */
+    private List<String> getPosterHashes(String selection, String[] selectionArgs) {
+        List<String> hashes = new ArrayList<>();
+
+        Cursor cursor = dbHelper.getReadableDatabase().query(
+                MovieFavoriteEntry.TABLE_NAME,
+                new String[]{MovieFavoriteEntry.COLUMN_POSTER_HASH},
+                (selection == null ? "" : "(" + selection + ") AND ")
+                        + MovieFavoriteEntry.COLUMN_POSTER_HASH + " IS NOT NULL",
+                selectionArgs,
+                null,
+                null,
+                null);
+
+        while(cursor.moveToNext()) {
+            hashes.add(cursor.getString(0));
+        }
+        cursor.close();
+
+        return hashes;
+    }
+
+    /**
+     * Deletes the posters that are no longer referenced by any favorite. Called after rows that
+     * referenced them were deleted or replaced.
+     *
+     * Posters are only stored and referenced inside a write transaction. Checking and deleting
+     * inside one as well means a concurrent write can not reference a poster between the check
+     * and the delete. Inside an outer transaction this joins it.
+     *
+     * @param hashes Poster hashes that may have become unreferenced
+     */
+    private void removeUnreferencedPosters(List<String> hashes) {
+        if(hashes.isEmpty()) {
+            return;
+        }
+
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        db.beginTransactionNonExclusive();
+        try {
+            for(String hash : hashes) {
+                if(getPosterHashes(MovieFavoriteEntry.COLUMN_POSTER_HASH + " = ? ",
+                        new String[]{hash}).isEmpty()) {
+                    posterStore.remove(hash);
+                }
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Opens the stored poster of a favorite for reading. Posters are kept in the PosterStore and
+     * never returned by query, this lets a caller load one poster at a time as it is needed.
+     *
+     * @throws FileNotFoundException If the uri is not a poster uri, the mode is not read only or
+     * the favorite has no stored poster
+     */
+    @Nullable @Override
+    public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode)
+            throws FileNotFoundException {
+
+        if(matcher.match(uri) != CODE_FAVORITE_POSTER) {
+            throw new FileNotFoundException("Invalid uri for open file: " + uri);
+        }
+        if(!"r".equals(mode)) {
+            throw new FileNotFoundException("Posters can only be opened for reading: " + uri);
+        }
+
+        List<String> hashes = getPosterHashes(MovieFavoriteEntry.COLUMN_MOVIEID + " = ? ",
+                new String[]{uri.getPathSegments().get(1)});
+
+        if(hashes.isEmpty() || !posterStore.contains(hashes.get(0))) {
+            throw new FileNotFoundException("No stored poster for " + uri);
+        }
+
+        return ParcelFileDescriptor.open(posterStore.getFile(hashes.get(0)),
+                ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
     @Nullable @Override
     public String getType(@NonNull Uri uri) {
         throw new RuntimeException("getType will not be implemented");
     }
 
-    @Override
-    public int update(@NonNull Uri uri, ContentValues values, String selection, String[] selectionArgs) {
-        throw new RuntimeException("update will not be implemented");
+    /**
+     * Work collected while a bulk insert or batch runs inside its transaction.
+     */
+    private static class Batch {
+        final Set<Uri> changedUris = new LinkedHashSet<>();
+        final List<String> releasedPosters = new ArrayList<>();
+        final List<String> storedPosters = new ArrayList<>();
     }
 }
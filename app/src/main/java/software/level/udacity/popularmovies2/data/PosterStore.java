@@ -0,0 +1,146 @@
+package software.level.udacity.popularmovies2.data;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Stores encoded poster images as files in app-private storage. Each file is named after the
+ * SHA-1 hash of its content, the favorites table only keeps that hash. Identical posters share a
+ * single file and a hash always refers to the same bytes.
+ *
+ * Posters are written to a temporary file and renamed into place, so a file that exists is always
+ * complete.
+ */
+public class PosterStore {
+
+    public static final String TAG = PosterStore.class.getSimpleName();
+
+    private static PosterStore store;
+
+    private static final String POSTER_DIRECTORY = "posters";
+
+    private final File directory;
+
+    private PosterStore(Context context) {
+        directory = new File(context.getFilesDir(), POSTER_DIRECTORY);
+    }
+
+    /**
+     * Creates the poster store. Must be called with a context before {@link #getInstance()} is used.
+     *
+     * @param context Context used to locate the files directory
+     */
+    public static synchronized void initializePosterStore(Context context) {
+        if(store == null) {
+            store = new PosterStore(context.getApplicationContext());
+        }
+    }
+
+    public static synchronized PosterStore getInstance() {
+        if(store == null) {
+            throw new IllegalStateException("PosterStore has not been initialized");
+        }
+        return store;
+    }
+
+    /**
+     * Writes the poster to the store unless a poster with the same content is already stored.
+     *
+     * @param data Encoded poster image
+     * @return Hash that identifies the poster
+     * @throws IOException If the poster could not be written
+     */
+    public String put(byte[] data) throws IOException {
+        String hash = computeHash(data);
+        File file = getFile(hash);
+
+        if(file.exists()) {
+            return hash;
+        }
+
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create poster directory " + directory);
+        }
+
+        // Every writer gets its own temp file, two writers of the same poster both rename a
+        // complete copy into place
+        File temp = File.createTempFile(hash, ".tmp", directory);
+        FileOutputStream out = new FileOutputStream(temp);
+        boolean written = false;
+        try {
+            out.write(data);
+            out.getFD().sync();
+            written = true;
+        } finally {
+            out.close();
+            if(!written) {
+                temp.delete();
+            }
+        }
+
+        if(!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Unable to store poster " + hash);
+        }
+
+        return hash;
+    }
+
+    /**
+     * @param hash Hash returned by {@link #put(byte[])}
+     * @return File that holds the poster, it may not exist if the poster was removed
+     */
+    public File getFile(String hash) {
+        return new File(directory, hash);
+    }
+
+    /**
+     * @param hash Hash returned by {@link #put(byte[])}
+     * @return True if the poster is in the store
+     */
+    public boolean contains(String hash) {
+        return hash != null && getFile(hash).exists();
+    }
+
+    /**
+     * Removes a poster from the store. The caller has to make sure it is no longer referenced.
+     *
+     * @param hash Hash returned by {@link #put(byte[])}
+     */
+    public void remove(String hash) {
+        if(hash != null && !getFile(hash).delete()) {
+            Log.w(TAG, "remove: Poster " + hash + " was not stored");
+        }
+    }
+
+    /**
+     * Computes the hash a poster is stored under.
+     *
+     * @param data Encoded poster image
+     * @return Lower case hex SHA-1 of the data
+     */
+    public static String computeHash(byte[] data) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android version provides SHA-1
+            throw new IllegalStateException(e);
+        }
+
+        byte[] hash = digest.digest(data);
+
+        StringBuilder builder = new StringBuilder(hash.length * 2);
+        for(byte b : hash) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,120 @@
+package software.level.udacity.popularmovies2.ui;
+
+import java.util.List;
+
+import software.level.udacity.popularmovies2.api.model.Movie;
+
+/**
+ * Change to a single favorite that is passed on to the view as an item change.
+ */
+class FavoriteChange {
+
+    static final int INSERT = 0;
+    static final int CHANGE = 1;
+    static final int REMOVE = 2;
+    static final int MOVE = 3;
+
+    final int type;
+    final int position;
+    final int toPosition;
+    final Movie movie;
+
+    /**
+     * @param type Kind of change
+     * @param position Position of the favorite before the change
+     * @param toPosition Position of the favorite after the change, the same unless it moved
+     * @param movie Favorite as it is stored now, null if it was removed
+     */
+    FavoriteChange(int type, int position, int toPosition, Movie movie) {
+        this.type = type;
+        this.position = position;
+        this.toPosition = toPosition;
+        this.movie = movie;
+    }
+
+    /**
+     * Applies a change to a single favorite to the loaded favorites, keeping them in the sort
+     * order of the provider. A favorite that sorts after the last loaded favorite while more
+     * pages remain belongs to a page that has not been read yet, it is left to that page.
+     *
+     * @param favorites Favorites loaded so far in the order of the provider, changed in place
+     * @param movieId Id of the movie that changed
+     * @param movie Movie as it is stored now, or null if it is no longer a favorite
+     * @param allPagesLoaded True if every page of favorites has been loaded
+     * @param lastAddedAt Added time of the last favorite loaded
+     * @param lastMovieId Movie id of the last favorite loaded
+     * @return Change made to the loaded favorites, or null if they did not change
+     */
+    static FavoriteChange apply(List<Movie> favorites, int movieId, Movie movie,
+                                boolean allPagesLoaded, long lastAddedAt, int lastMovieId) {
+        int position = -1;
+        for(int i = 0; i < favorites.size(); i++) {
+            if(favorites.get(i).id == movieId) {
+                position = i;
+                break;
+            }
+        }
+
+        // Re-inserting a favorite restamps its added time, so a loaded favorite can move as well
+        boolean loaded = movie != null && (allPagesLoaded ||
+                sortsBefore(movie.addedAt, movie.id, lastAddedAt, lastMovieId));
+
+        if(!loaded) {
+            if(position == -1) {
+                return null;
+            }
+
+            favorites.remove(position);
+            return new FavoriteChange(REMOVE, position, position, null);
+        }
+
+        if(position != -1) {
+            favorites.remove(position);
+        }
+
+        // Position of the first favorite that sorts after the changed one
+        int target = 0;
+        while(target < favorites.size() && sortsBefore(favorites.get(target).addedAt,
+                favorites.get(target).id, movie.addedAt, movie.id)) {
+            target++;
+        }
+
+        favorites.add(target, movie);
+
+        if(position == -1) {
+            return new FavoriteChange(INSERT, target, target, movie);
+        } else if(position == target) {
+            return new FavoriteChange(CHANGE, target, target, movie);
+        } else {
+            return new FavoriteChange(MOVE, position, target, movie);
+        }
+    }
+
+    /**
+     * @return True if a favorite with the first added time and movie id comes before a favorite
+     * with the second, in the order favorites are read from the provider
+     */
+    private static boolean sortsBefore(long addedAt, int movieId, long otherAddedAt, int otherMovieId) {
+        return addedAt > otherAddedAt || (addedAt == otherAddedAt && movieId > otherMovieId);
+    }
+
+    void applyTo(MovieGridActivity view) {
+        switch(type) {
+            case INSERT:
+                view.insertMovie(position, movie);
+                break;
+
+            case CHANGE:
+                view.changeMovie(position, movie);
+                break;
+
+            case REMOVE:
+                view.removeMovie(position);
+                break;
+
+            case MOVE:
+                view.moveMovie(position, toPosition, movie);
+                break;
+        }
+    }
+}
@@ -26,6 +26,9 @@ public class MovieDetailActivity extends AppCompatActivity implements MovieDetai
 
     public static final String TAG = MovieDetailActivity.class.getSimpleName();
 
+    // Poster size the grid showed the movie at, used as the first frame of the poster
+    public static final String EXTRA_PREVIEW_POSTER_SIZE = "previewPosterSize";
+
     @BindView(R.id.rv_movie_details) RecyclerView recyclerView;
     @BindView(R.id.pb_movie_details_loading) ProgressBar progressBar;
 
@@ -105,6 +108,9 @@ public class MovieDetailActivity extends AppCompatActivity implements MovieDetai
     protected void onDestroy() {
         super.onDestroy();
 
+        // Recycles every view so the poster bitmap they hold goes back to the PosterCache
+        recyclerView.setAdapter(null);
+
         if(activityIsFinished) {
             presenter.dispose();
         }
@@ -144,6 +150,7 @@ public class MovieDetailActivity extends AppCompatActivity implements MovieDetai
 
         // Create the adapter and set it
         adapter = new MovieDetailAdapter(this.presenter, this);
+        adapter.setPreviewPosterSize(getIntent().getStringExtra(EXTRA_PREVIEW_POSTER_SIZE));
         recyclerView.setAdapter(adapter);
 
         // Add dividers
@@ -1,9 +1,6 @@
 package software.level.udacity.popularmovies2.ui;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -20,10 +17,12 @@ import java.util.ArrayList;
 import java.util.Locale;
 
 import software.level.udacity.popularmovies2.R;
+import software.level.udacity.popularmovies2.api.ImagePipeline;
 import software.level.udacity.popularmovies2.api.MovieServiceUtils;
 import software.level.udacity.popularmovies2.api.model.Movie;
 import software.level.udacity.popularmovies2.api.model.MovieReview;
 import software.level.udacity.popularmovies2.api.model.MovieTrailer;
+import software.level.udacity.popularmovies2.data.PosterStore;
 
 public class MovieDetailAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
@@ -36,6 +35,9 @@ public class MovieDetailAdapter extends RecyclerView.Adapter<RecyclerView.ViewHo
     private MovieDetailPresenter presenter;
     private MovieOnClickHandler clickHandler;
 
+    // Poster size the grid showed the movie at
+    private String previewPosterSize;
+
     private static final int VIEW_HEADER = 100;
     private static final int VIEW_TRAILER = 101;
     private static final int VIEW_REVIEW = 102;
@@ -45,6 +47,16 @@ public class MovieDetailAdapter extends RecyclerView.Adapter<RecyclerView.ViewHo
         this.clickHandler = clickHandler;
     }
 
+    /**
+     * Set the poster size the grid showed the movie at. That poster is shown in the header while
+     * the full size poster loads.
+     *
+     * @param previewPosterSize Poster size used by the grid or null if unknown
+     */
+    public void setPreviewPosterSize(String previewPosterSize) {
+        this.previewPosterSize = previewPosterSize;
+    }
+
     @Override
     public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         LayoutInflater inflater = LayoutInflater.from(parent.getContext());
@@ -82,6 +94,15 @@ public class MovieDetailAdapter extends RecyclerView.Adapter<RecyclerView.ViewHo
         }
     }
 
+    @Override
+    public void onViewRecycled(RecyclerView.ViewHolder holder) {
+        super.onViewRecycled(holder);
+
+        if(holder instanceof MovieDetailHeaderViewHolder) {
+            PosterLoader.clear(((MovieDetailHeaderViewHolder) holder).poster);
+        }
+    }
+
     @Override
     public int getItemViewType(int position) {
         if(position == 0) {
@@ -117,21 +138,29 @@ public class MovieDetailAdapter extends RecyclerView.Adapter<RecyclerView.ViewHo
     }
 
     private void loadPosterImage(ImageView poster) {
-        // If we have image data in the database decode it and display it
-        if(movie.poster != null) {
+        // If the poster is in the poster store decode it from the file and display it
+        if(movie.posterHash != null) {
             Log.d(TAG, "bindHeaderViewHolder: Movie contains poster data, decoding...");
-            Bitmap bitmap = MovieServiceUtils.decodeImageData(movie.poster);
-            poster.setImageBitmap(bitmap);
+
+            // The poster takes up less than half the width of the header
+            int posterWidth = poster.getResources().getDisplayMetrics().widthPixels / 2;
+
+            Picasso.with(poster.getContext()).cancelRequest(poster);
+            PosterLoader.load(poster, movie.id, PosterStore.getInstance().getFile(movie.posterHash),
+                    posterWidth, 0);
 
         // If there is no image data saved, load it from the web
         } else {
+            PosterLoader.clear(poster);
+
             String imageUrl = MovieServiceUtils.buildImageURL(movie.posterPath,
                     poster.getContext().getString(R.string.poster_size)).toString();
 
-            Picasso.with(poster.getContext())
-                    .load(imageUrl)
-                    .placeholder(R.drawable.poster_placeholder)
-                    .into(poster);
+            // Start with the poster the grid showed, it is usually still in memory
+            String previewUrl = previewPosterSize == null ? null
+                    : MovieServiceUtils.buildImageURL(movie.posterPath, previewPosterSize).toString();
+
+            ProgressivePosterLoader.load(poster, previewUrl, true, imageUrl, ImagePipeline.TAG_DETAIL);
         }
     }
 
@@ -238,18 +267,7 @@ public class MovieDetailAdapter extends RecyclerView.Adapter<RecyclerView.ViewHo
 
                     // Add the movie as a favorite
                     } else {
-
-                        Drawable drawable = poster.getDrawable();
-
-                        // If we have a bitmap drawable set for the poster, save the data
-                        if(drawable instanceof BitmapDrawable) {
-                            Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
-                            presenter.setFavorite(bitmap);
-
-                        // Don't save any image data if we don't have the bitmap set
-                        } else {
-                            presenter.setFavorite(null);
-                        }
+                        presenter.setFavorite(view.getContext().getString(R.string.poster_size));
                     }
                     notifyItemChanged(getAdapterPosition());
                 }
@@ -0,0 +1,182 @@
+package software.level.udacity.popularmovies2.ui;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.support.v4.util.SimpleArrayMap;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.observers.DisposableObserver;
+import io.reactivex.schedulers.Schedulers;
+import software.level.udacity.popularmovies2.api.MovieDetailsCache;
+import software.level.udacity.popularmovies2.api.MovieServiceManager;
+import software.level.udacity.popularmovies2.api.model.Movie;
+import software.level.udacity.popularmovies2.api.model.MovieDetailsEnvelope;
+
+/**
+ * Warms the details of the movies that are visible in the grid into the MovieDetailsCache so the
+ * detail screen usually opens with its data already available.
+ *
+ * Prefetches use the background lane of the rate limiter. How many movies are prefetched depends
+ * on the connection and the battery: nothing is prefetched while offline or on a low battery that
+ * is not charging, and only a few movies are prefetched on a metered connection. Prefetches for
+ * movies that are no longer visible are cancelled. All methods must be called on the main thread.
+ */
+public class MovieDetailPrefetcher {
+
+    public static final String TAG = MovieDetailPrefetcher.class.getSimpleName();
+
+    private static final int LIMIT_UNMETERED = 12;
+    private static final int LIMIT_METERED = 2;
+
+    // Battery percentage below which prefetching stops unless the device is charging
+    private static final int LOW_BATTERY_PERCENT = 15;
+
+    private final Context context;
+    private final String apiKey;
+
+    // Prefetches that are currently running keyed by movie id
+    private final SimpleArrayMap<Integer, DisposableObserver<MovieDetailsEnvelope>> inFlight =
+            new SimpleArrayMap<>();
+
+    /**
+     * @param context Context used to check the connection and battery state
+     * @param apiKey required key to access the movie api
+     */
+    public MovieDetailPrefetcher(Context context, String apiKey) {
+        this.context = context.getApplicationContext();
+        this.apiKey = apiKey;
+    }
+
+    /**
+     * Prefetches the details for the visible movies that are not cached yet and cancels the
+     * prefetches for movies that are no longer visible.
+     *
+     * @param visible Movies that are currently visible in the grid
+     */
+    public void prefetch(List<Movie> visible) {
+        Set<Integer> visibleIds = new HashSet<>();
+        for(Movie movie : visible) {
+            visibleIds.add(movie.id);
+        }
+
+        // Cancel anything that scrolled off screen
+        List<Integer> offscreen = new ArrayList<>();
+        for(int i = 0; i < inFlight.size(); i++) {
+            if(!visibleIds.contains(inFlight.keyAt(i))) {
+                offscreen.add(inFlight.keyAt(i));
+            }
+        }
+        for(Integer id : offscreen) {
+            cancel(id);
+        }
+
+        int limit = getPrefetchLimit();
+
+        for(Movie movie : visible) {
+            if(inFlight.size() >= limit) {
+                break;
+            }
+            if(inFlight.containsKey(movie.id) || MovieDetailsCache.contains(movie.id)) {
+                continue;
+            }
+            start(movie.id);
+        }
+    }
+
+    /**
+     * Cancels every running prefetch, used when the grid switches to a different list.
+     */
+    public void cancelAll() {
+        for(int i = 0; i < inFlight.size(); i++) {
+            inFlight.valueAt(i).dispose();
+        }
+        inFlight.clear();
+    }
+
+    private void start(final int movieId) {
+        DisposableObserver<MovieDetailsEnvelope> observer = new DisposableObserver<MovieDetailsEnvelope>() {
+            @Override
+            public void onNext(MovieDetailsEnvelope details) {
+                MovieDetailsCache.put(movieId, details);
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                Log.d(TAG, "onError: Prefetch failed for movie " + movieId + ": " + e.getMessage());
+                inFlight.remove(movieId);
+            }
+
+            @Override
+            public void onComplete() {
+                inFlight.remove(movieId);
+            }
+        };
+        inFlight.put(movieId, observer);
+
+        MovieServiceManager.getBackgroundService()
+                .getMovieDetails(movieId, apiKey, MovieDetailsEnvelope.APPEND_VIDEOS_REVIEWS)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribeOn(Schedulers.io())
+                .subscribe(observer);
+    }
+
+    private void cancel(int movieId) {
+        DisposableObserver<MovieDetailsEnvelope> observer = inFlight.remove(movieId);
+        if(observer != null) {
+            observer.dispose();
+        }
+    }
+
+    /**
+     * Determines how many prefetches may run at once given the current connection and battery.
+     *
+     * @return Maximum number of running prefetches
+     */
+    private int getPrefetchLimit() {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo network = connectivityManager.getActiveNetworkInfo();
+
+        if(network == null || !network.isConnected() || isBatteryLow()) {
+            return 0;
+        }
+
+        if(ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager)) {
+            return LIMIT_METERED;
+        }
+
+        return LIMIT_UNMETERED;
+    }
+
+    private boolean isBatteryLow() {
+        // The battery changed broadcast is sticky so the current state is returned immediately
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if(battery == null) {
+            return false;
+        }
+
+        int status = battery.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        if(status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL) {
+            return false;
+        }
+
+        int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        if(level < 0 || scale <= 0) {
+            return false;
+        }
+
+        return level * 100 / scale < LOW_BATTERY_PERCENT;
+    }
+}
@@ -3,11 +3,12 @@ package software.level.udacity.popularmovies2.ui;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.database.Cursor;
-import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
 
+import java.io.IOException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.concurrent.TimeUnit;
 
@@ -18,22 +19,26 @@ import io.reactivex.CompletableOnSubscribe;
 import io.reactivex.Observable;
 import io.reactivex.ObservableEmitter;
 import io.reactivex.ObservableOnSubscribe;
+import io.reactivex.Observer;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.CompositeDisposable;
 import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.BiFunction;
 import io.reactivex.functions.Function;
-import io.reactivex.functions.Function3;
 import io.reactivex.observers.DisposableObserver;
 import io.reactivex.schedulers.Schedulers;
+import software.level.udacity.popularmovies2.api.MovieDetailsCache;
 import software.level.udacity.popularmovies2.api.MovieServiceManager;
 import software.level.udacity.popularmovies2.api.MovieServiceUtils;
 import software.level.udacity.popularmovies2.api.model.Movie;
 import software.level.udacity.popularmovies2.api.model.MovieDetailsComposite;
+import software.level.udacity.popularmovies2.api.model.MovieDetailsEnvelope;
 import software.level.udacity.popularmovies2.api.model.MovieReview;
 import software.level.udacity.popularmovies2.api.model.MovieReviewEnvelope;
 import software.level.udacity.popularmovies2.api.model.MovieTrailer;
 import software.level.udacity.popularmovies2.api.model.MovieTrailerEnvelope;
 import software.level.udacity.popularmovies2.data.MovieContract;
+import software.level.udacity.popularmovies2.data.PosterStore;
 
 
 public class MovieDetailPresenter extends Presenter<MovieDetailActivity> {
@@ -132,7 +137,7 @@ public class MovieDetailPresenter extends Presenter<MovieDetailActivity> {
 
     /**
      * Loads the trailer and review data for the movie. A zip operator is used to combine the network
-     * operations and deliver the data at the same time.
+     * request with the favorite lookup and deliver the data at the same time.
      */
     private void loadMovieDetails() {
         // Dispose of any existing observables, gets rid of any pending requests
@@ -143,16 +148,15 @@ public class MovieDetailPresenter extends Presenter<MovieDetailActivity> {
         compositeDisposable.add(observer);
 
         // Get the observables for all the movie data
-        Observable<MovieTrailerEnvelope> trailers = getTrailers();
-        Observable<MovieReviewEnvelope> reviews = getReviews();
+        Observable<MovieDetailsEnvelope> details = getDetails();
         Observable<Boolean> favorite = getFavorite();
 
         // Combine all the observables with the zip operator
-        Observable<MovieDetailsComposite> combined = Observable.zip(trailers, reviews, favorite,
-                new Function3<MovieTrailerEnvelope, MovieReviewEnvelope, Boolean, MovieDetailsComposite>() {
+        Observable<MovieDetailsComposite> combined = Observable.zip(details, favorite,
+                new BiFunction<MovieDetailsEnvelope, Boolean, MovieDetailsComposite>() {
                     @Override
-                    public MovieDetailsComposite apply(MovieTrailerEnvelope trailerEnvelope, MovieReviewEnvelope reviewEnvelope, Boolean favorite) throws Exception {
-                        return new MovieDetailsComposite(trailerEnvelope.trailers, reviewEnvelope.reviews, favorite);
+                    public MovieDetailsComposite apply(MovieDetailsEnvelope detailsEnvelope, Boolean favorite) throws Exception {
+                        return new MovieDetailsComposite(detailsEnvelope, favorite);
                     }
                 });
 
@@ -163,54 +167,32 @@ public class MovieDetailPresenter extends Presenter<MovieDetailActivity> {
     }
 
     /**
-     * Creates an observable to fetch the movie reviews and if an error occurs returns an empty
-     * list of reviews.
+     * Creates an observable to fetch the movie trailers and reviews with a single request using
+     * append_to_response, unless they were already prefetched from the grid. If an error occurs
+     * returns empty lists of trailers and reviews.
      *
-     * @return Observable<MovieReviewEnvelope>
+     * @return Observable<MovieDetailsEnvelope>
      */
-    private Observable<MovieReviewEnvelope> getReviews() {
-        if(!reviews.isEmpty()) {
-            return Observable.just(new MovieReviewEnvelope(reviews));
+    private Observable<MovieDetailsEnvelope> getDetails() {
+        MovieDetailsEnvelope prefetched = MovieDetailsCache.get(movie.id);
+
+        if(!trailers.isEmpty() || !reviews.isEmpty()) {
+            return Observable.just(new MovieDetailsEnvelope(
+                    new MovieTrailerEnvelope(trailers), new MovieReviewEnvelope(reviews)));
+        } else if(prefetched != null) {
+            return Observable.just(prefetched);
         } else {
-            return MovieServiceManager.getService().getReviews(movie.id, apiKey)
-                    .onErrorReturn(new Function<Throwable, MovieReviewEnvelope>() {
+            return MovieServiceManager.getService()
+                    .getMovieDetails(movie.id, apiKey, MovieDetailsEnvelope.APPEND_VIDEOS_REVIEWS)
+                    .onErrorReturn(new Function<Throwable, MovieDetailsEnvelope>() {
                         @Override
-                        public MovieReviewEnvelope apply(Throwable throwable) throws Exception {
-                            Log.e(TAG, "Error fetching reviews: " + throwable.getMessage());
+                        public MovieDetailsEnvelope apply(Throwable throwable) throws Exception {
+                            Log.e(TAG, "Error fetching movie details: " + throwable.getMessage());
 
-                            // Create an empty envelope with no reviews
-                            MovieReviewEnvelope envelope = new MovieReviewEnvelope(new ArrayList<MovieReview>());
-                            envelope.totalResults = 0;
-                            envelope.totalPages = 0;
-                            envelope.reviews = new ArrayList<>();
-
-                            return envelope;
-                        }
-                    });
-        }
-    }
-
-    /**
-     * Creates an observable to fetch the movie trailers and if an error occurs returns an empty
-     * list of trailers.
-     *
-     * @return Observable<MovieTrailerEnvelope>
-     */
-    private Observable<MovieTrailerEnvelope> getTrailers() {
-        if(!trailers.isEmpty()) {
-            return Observable.just(new MovieTrailerEnvelope(trailers));
-        } else {
-            return MovieServiceManager.getService().getTrailers(movie.id, apiKey)
-                    .onErrorReturn(new Function<Throwable, MovieTrailerEnvelope>() {
-                        @Override
-                        public MovieTrailerEnvelope apply(Throwable throwable) throws Exception {
-                            Log.e(TAG, "Error fetching trailers: " + throwable.getMessage());
-
-                            // Create an empty envelope with no trailers
-                            MovieTrailerEnvelope envelope = new MovieTrailerEnvelope(new ArrayList<MovieTrailer>());
-                            envelope.trailers = new ArrayList<>();
-
-                            return envelope;
+                            // Create an empty envelope with no trailers or reviews
+                            return new MovieDetailsEnvelope(
+                                    new MovieTrailerEnvelope(new ArrayList<MovieTrailer>()),
+                                    new MovieReviewEnvelope(new ArrayList<MovieReview>()));
                         }
                     });
         }
@@ -262,18 +244,24 @@ public class MovieDetailPresenter extends Presenter<MovieDetailActivity> {
     }
 
     /**
-     * Saves a movie to the favorites database using a Completable to offload the task to a background
-     * thread.
+     * Saves a movie to the favorites database using an Observable to offload the task to a background
+     * thread. The poster is stored as the original bytes served by The Movie DB, usually straight
+     * from the HTTP cache, so it is never decoded and encoded again.
      *
-     * @param poster Bitmap image of the poster to be saved
+     * The movie is shown on the main thread while it is saved, so the hash of a newly stored
+     * poster is emitted and set on the movie there.
+     *
+     * @param posterSize Size of the poster shown to the user, the same image is saved
      */
-    public void setFavorite(final Bitmap poster) {
+    public void setFavorite(final String posterSize) {
 
         favorite = true;
 
-        Completable.create(new CompletableOnSubscribe() {
+        final String posterHash = movie.posterHash;
+
+        Observable.create(new ObservableOnSubscribe<String>() {
             @Override
-            public void subscribe(CompletableEmitter e) throws Exception {
+            public void subscribe(ObservableEmitter<String> e) throws Exception {
 
                 ContentValues values = new ContentValues();
 
@@ -284,27 +272,44 @@ public class MovieDetailPresenter extends Presenter<MovieDetailActivity> {
                 values.put(MovieContract.MovieFavoriteEntry.COLUMN_RATING, movie.voteAverage);
                 values.put(MovieContract.MovieFavoriteEntry.COLUMN_POSTERPATH, movie.posterPath);
 
-                // If we were passed a poster bitmap to save encode it into a byte array and store it in the database
-                if(poster != null) {
-                    movie.poster = MovieServiceUtils.encodeImageData(poster);
-                    values.put(MovieContract.MovieFavoriteEntry.COLUMN_POSTER, movie.poster);
+                // Reference the poster we already have, otherwise fetch the original image data
+                String storedHash = null;
+
+                if(PosterStore.getInstance().contains(posterHash)) {
+                    values.put(MovieContract.MovieFavoriteEntry.COLUMN_POSTER_HASH, posterHash);
+                } else {
+                    byte[] poster = getPosterData(posterSize);
+
+                    if(poster != null) {
+                        values.put(MovieContract.MovieFavoriteEntry.COLUMN_POSTER, poster);
+                        storedHash = PosterStore.computeHash(poster);
+                    }
                 }
 
                 Uri result = resolver.insert(MovieContract.MovieFavoriteEntry.CONTENT_URI, values);
 
                 if(result == null) {
                     e.onError(new Throwable("Problem saving favorite to database."));
+                    return;
                 }
 
+                if(storedHash != null) {
+                    e.onNext(storedHash);
+                }
                 e.onComplete();
             }
         }).observeOn(AndroidSchedulers.mainThread())
             .subscribeOn(Schedulers.io())
-            .subscribe(new CompletableObserver() {
+            .subscribe(new Observer<String>() {
                 @Override
                 public void onSubscribe(Disposable d) {
                 }
 
+                @Override
+                public void onNext(String storedHash) {
+                    movie.posterHash = storedHash;
+                }
+
                 @Override
                 public void onComplete() {
                     Log.d(TAG, "onComplete: Saved movie to favorites database.");
@@ -317,6 +322,31 @@ public class MovieDetailPresenter extends Presenter<MovieDetailActivity> {
             });
     }
 
+    /**
+     * Downloads the encoded poster image. A favorite without a poster is still useful, so any
+     * problem is logged and no data is returned.
+     *
+     * @param posterSize Size of the poster to download
+     * @return Encoded poster bytes or null if they could not be downloaded
+     */
+    private byte[] getPosterData(String posterSize) {
+        if(movie.posterPath == null) {
+            return null;
+        }
+
+        URL url = MovieServiceUtils.buildImageURL(movie.posterPath, posterSize);
+        if(url == null) {
+            return null;
+        }
+
+        try {
+            return MovieServiceUtils.downloadImageData(url);
+        } catch (IOException e) {
+            Log.e(TAG, "getPosterData: Problem downloading poster " + url, e);
+            return null;
+        }
+    }
+
     /**
      * Remove movie from favorites stored in the database. Use a Completable to move the task
      * of the main thread.
@@ -332,6 +362,7 @@ public class MovieDetailPresenter extends Presenter<MovieDetailActivity> {
 
                 if(rows != 1) {
                     e.onError(new Throwable("Problem removing movie from database."));
+                    return;
                 }
 
                 e.onComplete();
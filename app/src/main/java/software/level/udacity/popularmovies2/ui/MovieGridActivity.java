@@ -3,20 +3,29 @@ package software.level.udacity.popularmovies2.ui;
 import android.content.Intent;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
+import android.support.v4.view.MenuItemCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.ProgressBar;
 import android.widget.Toast;
 
+import com.squareup.picasso.Picasso;
+
 import java.util.ArrayList;
+import java.util.List;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
+import software.level.udacity.popularmovies2.BuildConfig;
 import software.level.udacity.popularmovies2.R;
+import software.level.udacity.popularmovies2.api.ImagePipeline;
+import software.level.udacity.popularmovies2.api.PosterSizePolicy;
 import software.level.udacity.popularmovies2.api.model.Movie;
 import software.level.udacity.popularmovies2.api.model.MovieEnvelope;
 
@@ -29,6 +38,13 @@ public class MovieGridActivity extends AppCompatActivity implements MovieGridAda
 
     private MovieGridPresenter presenter;
     private MovieGridAdapter adapter;
+    private PosterPrefetcher posterPrefetcher;
+
+    // Size of the posters shown in the grid
+    private String posterSize;
+
+    // Number of rows from the end of the grid at which the next page of movies is requested
+    private static final int PREFETCH_ROWS = 4;
     
     // If the activity is going to be destroyed and the system does not expect to recreate it
     private boolean activityIsFinished = true;
@@ -94,7 +110,13 @@ public class MovieGridActivity extends AppCompatActivity implements MovieGridAda
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        
+
+        posterPrefetcher.reset();
+        Picasso.with(this).resumeTag(ImagePipeline.TAG_GRID);
+
+        // Recycles every view so the poster bitmaps they hold go back to the PosterCache
+        recyclerView.setAdapter(null);
+
         if(activityIsFinished) {
             presenter.dispose();
         }
@@ -111,12 +133,15 @@ public class MovieGridActivity extends AppCompatActivity implements MovieGridAda
     public void onClickMovie(Movie movie) {
         Intent intent = new Intent(this, MovieDetailActivity.class);
         intent.putExtra(Movie.TAG, movie);
+        intent.putExtra(MovieDetailActivity.EXTRA_PREVIEW_POSTER_SIZE, posterSize);
 
         startActivity(intent);
     }
 
     /**
-     * Inflates the menu resource for this activity.
+     * Inflates the menu resource for this activity and connects the search view to the
+     * presenter. Results are searched as the user types, a search still displayed by the
+     * presenter is shown again after the activity is recreated.
      *
      * @param menu Interface that manages the menu
      * @return True if the menu is to be displayed
@@ -125,6 +150,45 @@ public class MovieGridActivity extends AppCompatActivity implements MovieGridAda
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.menu_movie_grid, menu);
 
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        final SearchView searchView = (SearchView) MenuItemCompat.getActionView(searchItem);
+        searchView.setQueryHint(getString(R.string.search_hint));
+
+        String searchText = presenter.getSearchText();
+        if(searchText != null) {
+            MenuItemCompat.expandActionView(searchItem);
+            searchView.setQuery(searchText, false);
+            searchView.clearFocus();
+        }
+
+        MenuItemCompat.setOnActionExpandListener(searchItem, new MenuItemCompat.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                presenter.closeSearch();
+                return true;
+            }
+        });
+
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                // The results are already shown, hide the keyboard so they can be scrolled
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                presenter.searchMovies(newText);
+                return true;
+            }
+        });
+
         return true;
     }
 
@@ -163,15 +227,62 @@ public class MovieGridActivity extends AppCompatActivity implements MovieGridAda
         int columns = getResources().getInteger(R.integer.movie_grid_columns);
 
         // Initialize the layout manager and set the RecyclerView to use it
-        GridLayoutManager gridLayoutManager = new GridLayoutManager(this, columns);
+        final GridLayoutManager gridLayoutManager = new GridLayoutManager(this, columns);
         recyclerView.setLayoutManager(gridLayoutManager);
 
         // All the movie posters will be the same size
         recyclerView.setHasFixedSize(true);
 
+        // Every cell is an equal share of the screen width, pick the poster size that fills it
+        int cellWidth = getResources().getDisplayMetrics().widthPixels / columns;
+        posterSize = PosterSizePolicy.selectPosterSize(this, cellWidth);
+
+        Log.d(TAG, "configureRecyclerView: Cell width " + cellWidth + "px, using poster size " + posterSize);
+
         // Create the adapter and set it
         adapter = new MovieGridAdapter(this);
+        adapter.setPosterSize(cellWidth, posterSize);
         recyclerView.setAdapter(adapter);
+
+        // Fetch the posters of the rows that are about to scroll into view
+        posterPrefetcher = new PosterPrefetcher(this, gridLayoutManager, adapter, posterSize);
+        recyclerView.addOnScrollListener(posterPrefetcher);
+
+        // Request the next page once we scroll within PREFETCH_ROWS rows of the end of the grid
+        // and prefetch the details of the visible movies whenever scrolling stops
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                // Posters flung past are never seen, hold their requests until the grid slows down
+                if(newState == RecyclerView.SCROLL_STATE_SETTLING) {
+                    Picasso.with(MovieGridActivity.this).pauseTag(ImagePipeline.TAG_GRID);
+                } else {
+                    Picasso.with(MovieGridActivity.this).resumeTag(ImagePipeline.TAG_GRID);
+                }
+
+                if(newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    notifyVisibleRange();
+
+                    if(BuildConfig.DEBUG) {
+                        ImagePipeline.logStats();
+                    }
+                }
+            }
+
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if(dy <= 0) {
+                    return;
+                }
+
+                int threshold = PREFETCH_ROWS * gridLayoutManager.getSpanCount();
+                int lastVisible = gridLayoutManager.findLastVisibleItemPosition();
+
+                if(lastVisible + threshold >= gridLayoutManager.getItemCount()) {
+                    presenter.loadNextPage();
+                }
+            }
+        });
     }
 
     
@@ -185,8 +296,54 @@ public class MovieGridActivity extends AppCompatActivity implements MovieGridAda
         recyclerView.setVisibility(View.VISIBLE);
     }
 
+    /**
+     * Tells the presenter which movies are visible in the grid.
+     */
+    private void notifyVisibleRange() {
+        GridLayoutManager layoutManager = (GridLayoutManager) recyclerView.getLayoutManager();
+        presenter.onVisibleRangeChanged(layoutManager.findFirstVisibleItemPosition(),
+                layoutManager.findLastVisibleItemPosition());
+    }
+
     public void updateData(ArrayList<Movie> movieData) {
+        // Posters being fetched for the previous list are no longer needed
+        posterPrefetcher.reset();
         adapter.setMovieData(movieData);
+
+        // Wait for the new data to be laid out before checking what is visible
+        recyclerView.post(new Runnable() {
+            @Override
+            public void run() {
+                notifyVisibleRange();
+            }
+        });
+    }
+
+    public void appendData(List<Movie> movieData) {
+        adapter.appendMovieData(movieData);
+    }
+
+    public void insertMovie(int position, Movie movie) {
+        adapter.insertMovie(position, movie);
+    }
+
+    public void changeMovie(int position, Movie movie) {
+        adapter.changeMovie(position, movie);
+    }
+
+    public void removeMovie(int position) {
+        adapter.removeMovie(position);
+    }
+
+    public void moveMovie(int fromPosition, int toPosition, Movie movie) {
+        adapter.moveMovie(fromPosition, toPosition, movie);
+    }
+
+    /**
+     * @return True if the grid shows movies given to it earlier, false for a new activity
+     */
+    public boolean hasMovieData() {
+        return adapter.getItemCount() > 0;
     }
 
     public void showEmptyFavoritesWarning() {
@@ -205,7 +362,9 @@ public class MovieGridActivity extends AppCompatActivity implements MovieGridAda
             new PresenterFactory<MovieGridPresenter>() {
                 @NonNull @Override
                 public MovieGridPresenter createPresenter() {
-                    return new MovieGridPresenter(getResources().getString(R.string.API_KEY), getContentResolver());
+                    String apiKey = getResources().getString(R.string.API_KEY);
+                    return new MovieGridPresenter(apiKey, getContentResolver(),
+                            new MovieDetailPrefetcher(getApplicationContext(), apiKey));
                 }
             };
 
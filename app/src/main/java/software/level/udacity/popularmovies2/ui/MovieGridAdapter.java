@@ -1,6 +1,5 @@
 package software.level.udacity.popularmovies2.ui;
 
-import android.graphics.Bitmap;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -10,10 +9,14 @@ import android.widget.ImageView;
 import com.squareup.picasso.Picasso;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import software.level.udacity.popularmovies2.R;
+import software.level.udacity.popularmovies2.api.ImagePipeline;
 import software.level.udacity.popularmovies2.api.MovieServiceUtils;
+import software.level.udacity.popularmovies2.api.PosterSizePolicy;
 import software.level.udacity.popularmovies2.api.model.Movie;
+import software.level.udacity.popularmovies2.data.PosterStore;
 
 public class MovieGridAdapter extends RecyclerView.Adapter<MovieGridAdapter.MovieGridAdapterViewHolder> {
 
@@ -23,6 +26,12 @@ public class MovieGridAdapter extends RecyclerView.Adapter<MovieGridAdapter.Movi
     // Click handler for selection of movies
     private MovieClickHandler clickHandler;
 
+    // Width of a grid cell in pixels, posters from the poster store are decoded to this size
+    private int posterWidth;
+
+    // Size of the posters requested from the image service
+    private String posterSize;
+
     public MovieGridAdapter(MovieClickHandler clickHandler) {
         this.clickHandler = clickHandler;
     }
@@ -39,20 +48,22 @@ public class MovieGridAdapter extends RecyclerView.Adapter<MovieGridAdapter.Movi
 
 
     private void loadPosterImage(ImageView poster, Movie movie) {
-        // If we have image data in the database decode it and display it
-        if(movie.poster != null) {
-            Bitmap bitmap = MovieServiceUtils.decodeImageData(movie.poster);
-            poster.setImageBitmap(bitmap);
+        // If the poster is in the poster store decode it from the file in the background
+        if(movie.posterHash != null) {
+            Picasso.with(poster.getContext()).cancelRequest(poster);
+            PosterLoader.load(poster, movie.id, PosterStore.getInstance().getFile(movie.posterHash),
+                    posterWidth, 0);
 
             // If there is no image data saved, load it from the web
         } else {
-            String imageUrl = MovieServiceUtils.buildImageURL(movie.posterPath,
-                    poster.getContext().getString(R.string.poster_size)).toString();
+            PosterLoader.clear(poster);
+
+            String imageUrl = MovieServiceUtils.buildImageURL(movie.posterPath, posterSize).toString();
+            String thumbnailUrl = MovieServiceUtils.buildImageURL(movie.posterPath,
+                    PosterSizePolicy.SIZE_THUMBNAIL).toString();
 
-            Picasso.with(poster.getContext())
-                    .load(imageUrl)
-                    .placeholder(R.drawable.poster_placeholder)
-                    .into(poster);
+            // Show the small thumbnail first unless the full poster is already cached
+            ProgressivePosterLoader.load(poster, thumbnailUrl, false, imageUrl, ImagePipeline.TAG_GRID);
         }
     }
 
@@ -62,6 +73,15 @@ public class MovieGridAdapter extends RecyclerView.Adapter<MovieGridAdapter.Movi
         loadPosterImage(holder.poster, movie);
     }
 
+    /**
+     * Releases the poster of a recycled cell so its bitmap can be reused by the next decode.
+     */
+    @Override
+    public void onViewRecycled(MovieGridAdapterViewHolder holder) {
+        super.onViewRecycled(holder);
+        PosterLoader.clear(holder.poster);
+    }
+
     @Override
     public int getItemCount() {
         if(movies == null) {
@@ -70,15 +90,98 @@ public class MovieGridAdapter extends RecyclerView.Adapter<MovieGridAdapter.Movi
         return movies.size();
     }
 
+    /**
+     * Set the width of a grid cell so stored posters are not decoded larger than they are shown
+     * @param posterWidth Width of a cell in pixels
+     * @param posterSize Size of the posters to download, see PosterSizePolicy
+     */
+    public void setPosterSize(int posterWidth, String posterSize) {
+        this.posterWidth = posterWidth;
+        this.posterSize = posterSize;
+    }
+
+    /**
+     * @param position Adapter position
+     * @return Movie at the position or null if there is no movie at that position
+     */
+    public Movie getMovie(int position) {
+        if(movies == null || position < 0 || position >= movies.size()) {
+            return null;
+        }
+        return movies.get(position);
+    }
+
     /**
      * Set the movie data and refresh the RecyclerView to display the new data
      * @param data An ArrayList of Movie objects
      */
     public void setMovieData(ArrayList<Movie> data) {
-        movies = data;
+        movies = new ArrayList<>(data);
         notifyDataSetChanged();
     }
 
+    /**
+     * Append a page of movie data to the end of the list. Only the inserted range is notified so
+     * the rows that are already laid out are not rebound.
+     * @param data A List of Movie objects to add after the existing data
+     */
+    public void appendMovieData(List<Movie> data) {
+        if(movies == null) {
+            movies = new ArrayList<>();
+        }
+
+        int positionStart = movies.size();
+        movies.addAll(data);
+        notifyItemRangeInserted(positionStart, data.size());
+    }
+
+    /**
+     * Insert a single movie, only the inserted position is notified.
+     * @param position Adapter position to insert the movie at
+     * @param movie Movie to insert
+     */
+    public void insertMovie(int position, Movie movie) {
+        if(movies == null) {
+            movies = new ArrayList<>();
+        }
+
+        movies.add(position, movie);
+        notifyItemInserted(position);
+    }
+
+    /**
+     * Replace the movie at a position, only that position is rebound.
+     * @param position Adapter position of the movie
+     * @param movie Movie to show instead
+     */
+    public void changeMovie(int position, Movie movie) {
+        movies.set(position, movie);
+        notifyItemChanged(position);
+    }
+
+    /**
+     * Remove the movie at a position, only the removed position is notified.
+     * @param position Adapter position of the movie
+     */
+    public void removeMovie(int position) {
+        movies.remove(position);
+        notifyItemRemoved(position);
+    }
+
+    /**
+     * Move a movie to a new position and show its current data, only the two positions are
+     * notified.
+     * @param fromPosition Adapter position of the movie
+     * @param toPosition Adapter position the movie moves to
+     * @param movie Movie to show at the new position
+     */
+    public void moveMovie(int fromPosition, int toPosition, Movie movie) {
+        movies.remove(fromPosition);
+        movies.add(toPosition, movie);
+        notifyItemMoved(fromPosition, toPosition);
+        notifyItemChanged(toPosition);
+    }
+
     public class MovieGridAdapterViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
 
         public ImageView poster;
@@ -92,7 +195,13 @@ public class MovieGridAdapter extends RecyclerView.Adapter<MovieGridAdapter.Movi
 
         @Override
         public void onClick(View view) {
-            Movie clickedMovie = movies.get(getAdapterPosition());
+            // The cell may be animating out after its movie was removed
+            int position = getAdapterPosition();
+            if(position == RecyclerView.NO_POSITION) {
+                return;
+            }
+
+            Movie clickedMovie = movies.get(position);
             clickHandler.onClickMovie(clickedMovie);
         }
     }
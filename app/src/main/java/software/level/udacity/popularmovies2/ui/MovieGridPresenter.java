@@ -1,10 +1,13 @@
 package software.level.udacity.popularmovies2.ui;
 
 import android.content.ContentResolver;
+import android.content.ContentValues;
 import android.database.ContentObserver;
 import android.database.Cursor;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
+import android.text.TextUtils;
 import android.util.Log;
 
 import java.util.ArrayList;
@@ -14,15 +17,19 @@ import java.util.concurrent.TimeUnit;
 import io.reactivex.Observable;
 import io.reactivex.ObservableEmitter;
 import io.reactivex.ObservableOnSubscribe;
+import io.reactivex.ObservableSource;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.functions.Consumer;
 import io.reactivex.functions.Function;
 import io.reactivex.observers.DisposableObserver;
 import io.reactivex.schedulers.Schedulers;
+import software.level.udacity.popularmovies2.api.MovieService;
 import software.level.udacity.popularmovies2.api.MovieServiceManager;
 import software.level.udacity.popularmovies2.api.model.Movie;
 import software.level.udacity.popularmovies2.api.model.MovieEnvelope;
 import software.level.udacity.popularmovies2.data.MovieContract;
+import software.level.udacity.popularmovies2.data.MovieContract.MovieCategoryEntry;
 
 public class MovieGridPresenter extends Presenter<MovieGridActivity> {
 
@@ -32,30 +39,63 @@ public class MovieGridPresenter extends Presenter<MovieGridActivity> {
     private ContentResolver resolver;
 
     private FavoriteContentObserver observer;
+    private MovieDetailPrefetcher prefetcher;
 
     private boolean isLoading = false;
+    private boolean isLoadingNextPage = false;
 
     private int selectedRequestType = MovieEnvelope.TYPE_POPULAR;
 
     private CompositeDisposable compositeDisposable = new CompositeDisposable();
 
+    // Reads of single favorites that changed, kept apart so switching lists does not lose them
+    private CompositeDisposable favoriteChanges = new CompositeDisposable();
+
+    // Changes to the favorites made while the view that shows them was unbound, replayed when it
+    // is bound again. Null if the next view has to be given the whole list instead.
+    private List<FavoriteChange> pendingChanges;
+
     private ArrayList<Movie> favorites = new ArrayList<>();
     private ArrayList<Movie> popular = new ArrayList<>();
     private ArrayList<Movie> toprated = new ArrayList<>();
+    private ArrayList<Movie> searchResults = new ArrayList<>();
+
+    // Text being searched for and the list that was shown before the search started
+    private String searchText;
+    private int typeBeforeSearch = MovieEnvelope.TYPE_POPULAR;
+
+    // Last page that has been loaded and the number of pages available for the paged lists
+    private int popularPage = 0;
+    private int popularTotalPages = 0;
+    private int topratedPage = 0;
+    private int topratedTotalPages = 0;
+    private int favoritesPage = 0;
+    private int favoritesTotalPages = 0;
+
+    // Time the first page of the popular and top rated lists was fetched from the API, 0 if unknown
+    private long popularFetchedAt;
+    private long topratedFetchedAt;
+
+    // Sort key of the last favorite loaded, the next page of favorites starts after it
+    private long favoritesLastAddedAt;
+    private int favoritesLastMovieId;
+
+    // Favorites read from the database at a time, enough to fill the grid a few times over
+    private static final int FAVORITES_PAGE_SIZE = 60;
 
     private static final String KEY_REQUEST_TYPE = "requestType";
-    private static final String KEY_MOVIES_POPULAR = "popular";
-    private static final String KEY_MOVIES_TOPRATED = "toprated";
 
     /**
      * Constructor to create a new instance of the presenter.
      *
      * @param apiKey required key to access to movie api
      * @param resolver ContentResolver object for retrieving information from the ContentProvider
+     * @param prefetcher MovieDetailPrefetcher that warms the details of the visible movies
      */
-    public MovieGridPresenter(String apiKey, ContentResolver resolver) {
+    public MovieGridPresenter(String apiKey, ContentResolver resolver, MovieDetailPrefetcher prefetcher) {
         this.apiKey = apiKey;
         this.resolver = resolver;
+        this.prefetcher = prefetcher;
 
         // Create a content observer to be notified of changes to the favorites list
         observer = new FavoriteContentObserver(new Handler());
@@ -77,24 +117,47 @@ public class MovieGridPresenter extends Presenter<MovieGridActivity> {
             return;
         }
 
+        // The same view is still showing the favorites, only the changes since are applied
+        if(pendingChanges != null && selectedRequestType == MovieEnvelope.TYPE_FAVORITE
+                && view.hasMovieData()) {
+
+            for(FavoriteChange change : pendingChanges) {
+                change.applyTo(view);
+            }
+            pendingChanges = null;
+
+            return;
+        }
+
+        pendingChanges = null;
         loadMovieData();
     }
 
+    @Override
+    public void unbindView() {
+        super.unbindView();
+
+        // Collect the favorite changes until the view comes back
+        pendingChanges = selectedRequestType == MovieEnvelope.TYPE_FAVORITE && !isLoading
+                ? new ArrayList<FavoriteChange>()
+                : null;
+    }
+
     /**
-     * Generates a bundle with state information for recreating the presenter. Does not save the list
-     * of favorites to the bundle. Those can be recreated from the database if needed.
+     * Generates a bundle with state information for recreating the presenter. Does not save any
+     * list of movies to the bundle, the paged lists grow with every page scrolled and would not fit
+     * in the transaction that saves it. Every page loaded is stored in the database and the lists
+     * are read again from there, together with their paging position.
      *
      * @return Bundle containing state information
      */
     public Bundle saveState() {
         Bundle state = new Bundle();
 
-        // Save selected request type
-        state.putInt(KEY_REQUEST_TYPE, selectedRequestType);
-
-        // Save the lists of movie data
-        state.putParcelableArrayList(KEY_MOVIES_POPULAR, popular);
-        state.putParcelableArrayList(KEY_MOVIES_TOPRATED, toprated);
+        // Save selected request type, a search is not restored
+        state.putInt(KEY_REQUEST_TYPE, selectedRequestType == MovieEnvelope.TYPE_SEARCH
+                ? typeBeforeSearch
+                : selectedRequestType);
 
         Log.d(TAG, "saveState: " + state.toString());
 
@@ -111,14 +174,13 @@ public class MovieGridPresenter extends Presenter<MovieGridActivity> {
         Log.d(TAG, "restoreState: " + state.toString());
 
         this.selectedRequestType = state.getInt(KEY_REQUEST_TYPE, MovieEnvelope.TYPE_POPULAR);
-
-        this.toprated = state.getParcelableArrayList(KEY_MOVIES_TOPRATED);
-        this.popular = state.getParcelableArrayList(KEY_MOVIES_POPULAR);
     }
 
     @Override
     public void dispose() {
         compositeDisposable.clear();
+        favoriteChanges.clear();
+        prefetcher.cancelAll();
         resolver.unregisterContentObserver(observer);
 
         super.dispose();
@@ -143,6 +205,48 @@ public class MovieGridPresenter extends Presenter<MovieGridActivity> {
         loadMovieData();
     }
 
+    /**
+     * Shows the favorites and stored movies that match the search text. Searching replaces the
+     * displayed list until {@link #closeSearch()} is called.
+     *
+     * @param text Text entered by the user
+     */
+    public void searchMovies(String text) {
+        if(selectedRequestType != MovieEnvelope.TYPE_SEARCH) {
+            // Clearing the search view as it collapses must not start a new search
+            if(text == null || text.trim().isEmpty()) {
+                return;
+            }
+
+            typeBeforeSearch = selectedRequestType;
+            selectedRequestType = MovieEnvelope.TYPE_SEARCH;
+        }
+
+        searchText = text;
+        loadMovieData();
+    }
+
+    /**
+     * Ends the search and shows the list that was displayed before it started.
+     */
+    public void closeSearch() {
+        if(selectedRequestType != MovieEnvelope.TYPE_SEARCH) {
+            return;
+        }
+
+        searchText = null;
+        searchResults = new ArrayList<>();
+
+        updateMovieData(typeBeforeSearch);
+    }
+
+    /**
+     * @return Text being searched for or null if no search is displayed
+     */
+    public String getSearchText() {
+        return selectedRequestType == MovieEnvelope.TYPE_SEARCH ? searchText : null;
+    }
+
     /**
      * Loads movie data from the appropriate data source. This could be from the Movie Database
      * API or from the local database for stored favorites.
@@ -150,6 +254,10 @@ public class MovieGridPresenter extends Presenter<MovieGridActivity> {
     private void loadMovieData() {
         // Dispose of any existing observables, gets rid of any pending requests
         compositeDisposable.clear();
+        isLoadingNextPage = false;
+
+        // Details prefetched for the previous list are no longer needed
+        prefetcher.cancelAll();
 
         // Create a new observer instance and add it to the composite disposable
         DisposableObserver<MovieEnvelope> observer = new MovieObserver();
@@ -161,6 +269,95 @@ public class MovieGridPresenter extends Presenter<MovieGridActivity> {
                 .subscribe(observer);
     }
 
+    /**
+     * Loads the next page of the selected list in the background and appends it to the movies
+     * that are already displayed. Does nothing if a page is already being fetched, the first
+     * page has not been loaded yet or the last page has been reached. Popular and top rated pages
+     * come from the API, favorites are read from the database.
+     */
+    public void loadNextPage() {
+        if(isLoading || isLoadingNextPage) {
+            return;
+        }
+
+        int page;
+        int totalPages;
+
+        switch(selectedRequestType) {
+            case MovieEnvelope.TYPE_POPULAR:
+                page = popularPage;
+                totalPages = popularTotalPages;
+                break;
+
+            case MovieEnvelope.TYPE_TOPRATED:
+                page = topratedPage;
+                totalPages = topratedTotalPages;
+                break;
+
+            case MovieEnvelope.TYPE_FAVORITE:
+                page = favoritesPage;
+                totalPages = favoritesTotalPages;
+                break;
+
+            default:
+                return;
+        }
+
+        if(page == 0 || page >= totalPages) {
+            return;
+        }
+
+        isLoadingNextPage = true;
+
+        DisposableObserver<MovieEnvelope> observer = new NextPageObserver();
+        compositeDisposable.add(observer);
+
+        Observable<MovieEnvelope> observable = selectedRequestType == MovieEnvelope.TYPE_FAVORITE
+                ? getFavoritePage(page + 1, favoritesLastAddedAt, favoritesLastMovieId)
+                : getMoviePage(selectedRequestType, page + 1, false);
+
+        observable
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribeOn(Schedulers.io())
+                .subscribe(observer);
+    }
+
+    /**
+     * Called by the view when the range of visible movies changes so the details for those movies
+     * can be prefetched.
+     *
+     * @param first Adapter position of the first visible movie
+     * @param last Adapter position of the last visible movie
+     */
+    public void onVisibleRangeChanged(int first, int last) {
+        List<Movie> movies = getSelectedMovies();
+
+        if(isLoading || first < 0 || last < first || last >= movies.size()) {
+            return;
+        }
+
+        prefetcher.prefetch(movies.subList(first, last + 1));
+    }
+
+    /**
+     * @return List of movies for the selected request type
+     */
+    private ArrayList<Movie> getSelectedMovies() {
+        switch(selectedRequestType) {
+            case MovieEnvelope.TYPE_TOPRATED:
+                return toprated;
+
+            case MovieEnvelope.TYPE_FAVORITE:
+                return favorites;
+
+            case MovieEnvelope.TYPE_SEARCH:
+                return searchResults;
+
+            default:
+                return popular;
+        }
+    }
+
     /**
      * Gets an observable that will emit movie data based on the selected request type.
      *
@@ -182,6 +379,10 @@ public class MovieGridPresenter extends Presenter<MovieGridActivity> {
                 observable = getFavoriteMovies();
                 break;
 
+            case MovieEnvelope.TYPE_SEARCH:
+                observable = getSearchResults(searchText);
+                break;
+
             default:
                 observable = getPopularMovies();
         }
@@ -189,35 +390,238 @@ public class MovieGridPresenter extends Presenter<MovieGridActivity> {
         return observable;
     }
 
+    /**
+     * The loaded list is only shown again while it is within its TTL, otherwise it is read from
+     * the database again so a stale list is refreshed in the background.
+     */
     private Observable<MovieEnvelope> getPopularMovies() {
-        if(!popular.isEmpty()) {
-            return Observable.just(new MovieEnvelope(popular, MovieEnvelope.TYPE_POPULAR));
+        if(!popular.isEmpty() && isFresh(popularFetchedAt)) {
+            MovieEnvelope envelope = new MovieEnvelope(popular, MovieEnvelope.TYPE_POPULAR);
+            envelope.fetchedAt = popularFetchedAt;
+            return Observable.just(envelope);
         } else {
-            return MovieServiceManager.getService()
-                    .getPopularMovies(apiKey)
-                    .map(new Function<MovieEnvelope, MovieEnvelope>() {
-                        @Override
-                        public MovieEnvelope apply(MovieEnvelope movieEnvelope) throws Exception {
-                            movieEnvelope.resultType = MovieEnvelope.TYPE_POPULAR;
-                            return movieEnvelope;
-                        }
-                    });
+            return getCategoryMovies(MovieEnvelope.TYPE_POPULAR);
         }
     }
 
     private Observable<MovieEnvelope> getTopRatedMovies() {
-        if(!toprated.isEmpty()) {
-            return Observable.just(new MovieEnvelope(toprated, MovieEnvelope.TYPE_TOPRATED));
+        if(!toprated.isEmpty() && isFresh(topratedFetchedAt)) {
+            MovieEnvelope envelope = new MovieEnvelope(toprated, MovieEnvelope.TYPE_TOPRATED);
+            envelope.fetchedAt = topratedFetchedAt;
+            return Observable.just(envelope);
         } else {
-            return MovieServiceManager.getService()
-                    .getTopRatedMovies(apiKey)
-                    .map(new Function<MovieEnvelope, MovieEnvelope>() {
-                        @Override
-                        public MovieEnvelope apply(MovieEnvelope movieEnvelope) throws Exception {
-                            movieEnvelope.resultType = MovieEnvelope.TYPE_TOPRATED;
-                            return movieEnvelope;
+            return getCategoryMovies(MovieEnvelope.TYPE_TOPRATED);
+        }
+    }
+
+    /**
+     * @param fetchedAt Time the list was fetched from the API, 0 if unknown
+     * @return True if the list is younger than its TTL
+     */
+    private static boolean isFresh(long fetchedAt) {
+        return fetchedAt != 0 && System.currentTimeMillis() - fetchedAt < MovieCategoryEntry.TTL_MILLIS;
+    }
+
+    /**
+     * Creates an observable that emits the list stored in the database right away. If nothing is
+     * stored the first page is fetched from the API. If the stored list is older than its TTL it is
+     * emitted first and then replaced by a fresh first page, a failed refresh is ignored so the
+     * stored list stays on screen while offline.
+     *
+     * @param requestType Type of movie request, either popular or top rated
+     * @return Observable that emits one or two MovieEnvelope objects before termination
+     */
+    private Observable<MovieEnvelope> getCategoryMovies(final int requestType) {
+        return getStoredMovies(requestType)
+                .flatMap(new Function<MovieEnvelope, ObservableSource<MovieEnvelope>>() {
+                    @Override
+                    public ObservableSource<MovieEnvelope> apply(MovieEnvelope stored) throws Exception {
+                        if(stored.movies.isEmpty()) {
+                            return getMoviePage(requestType, 1, false);
                         }
-                    });
+
+                        Observable<MovieEnvelope> fromDisk = Observable.just(stored);
+
+                        if(isFresh(stored.fetchedAt)) {
+                            return fromDisk;
+                        }
+
+                        Log.d(TAG, "getCategoryMovies: Stored list is stale, refreshing in the background");
+
+                        // The HTTP cache keeps the list longer than the TTL, it has to be skipped
+                        return fromDisk.concatWith(getMoviePage(requestType, 1, true)
+                                .onErrorResumeNext(Observable.<MovieEnvelope>empty()));
+                    }
+                });
+    }
+
+    /**
+     * Creates an observable that reads the stored list for the request type from the database.
+     * The envelope carries the last stored page so paging continues from there.
+     *
+     * @param requestType Type of movie request, either popular or top rated
+     * @return Observable that emits a single MovieEnvelope, with an empty list if nothing is stored
+     */
+    private Observable<MovieEnvelope> getStoredMovies(final int requestType) {
+        return Observable.create(new ObservableOnSubscribe<MovieEnvelope>() {
+            @Override
+            public void subscribe(ObservableEmitter<MovieEnvelope> e) throws Exception {
+                List<Movie> movies = new ArrayList<>();
+                MovieEnvelope envelope = new MovieEnvelope(movies, requestType);
+
+                Cursor results = resolver.query(MovieCategoryEntry.buildCategoryUri(getCategory(requestType)),
+                        null, null, null, null);
+
+                if(results != null) {
+                    int pageIndex = results.getColumnIndex(MovieCategoryEntry.COLUMN_PAGE);
+                    int totalPagesIndex = results.getColumnIndex(MovieCategoryEntry.COLUMN_TOTAL_PAGES);
+                    int fetchedAtIndex = results.getColumnIndex(MovieCategoryEntry.COLUMN_FETCHED_AT);
+
+                    while(results.moveToNext()) {
+                        movies.add(readMovie(results));
+
+                        // The first page is always the oldest since storing it clears the list
+                        if(results.isFirst()) {
+                            envelope.fetchedAt = results.getLong(fetchedAtIndex);
+                        }
+                        envelope.page = results.getInt(pageIndex);
+                        envelope.totalPages = results.getInt(totalPagesIndex);
+                    }
+
+                    results.close();
+                }
+
+                e.onNext(envelope);
+                e.onComplete();
+            }
+        });
+    }
+
+    /**
+     * Stores a page of movies fetched from the API in the database in a single transaction.
+     * Failures are logged and otherwise ignored, the movies can still be shown.
+     *
+     * @param envelope MovieEnvelope returned from the API with its result type set
+     */
+    private void storeMoviePage(MovieEnvelope envelope) {
+        if(envelope.movies == null || envelope.page == null) {
+            return;
+        }
+
+        ContentValues[] values = new ContentValues[envelope.movies.size()];
+
+        for(int i = 0; i < values.length; i++) {
+            Movie movie = envelope.movies.get(i);
+            ContentValues value = new ContentValues();
+
+            value.put(MovieCategoryEntry.COLUMN_PAGE, envelope.page);
+            value.put(MovieCategoryEntry.COLUMN_RANK, i);
+            value.put(MovieCategoryEntry.COLUMN_TOTAL_PAGES, envelope.totalPages);
+            value.put(MovieCategoryEntry.COLUMN_FETCHED_AT, envelope.fetchedAt);
+            value.put(MovieCategoryEntry.COLUMN_MOVIEID, movie.id);
+            value.put(MovieCategoryEntry.COLUMN_TITLE, movie.title);
+            value.put(MovieCategoryEntry.COLUMN_OVERVIEW, movie.overview);
+            value.put(MovieCategoryEntry.COLUMN_RELEASEDATE, movie.releaseDate);
+            value.put(MovieCategoryEntry.COLUMN_RATING, movie.voteAverage);
+            value.put(MovieCategoryEntry.COLUMN_POSTERPATH, movie.posterPath);
+
+            values[i] = value;
+        }
+
+        try {
+            resolver.bulkInsert(MovieCategoryEntry.buildCategoryUri(getCategory(envelope.resultType)), values);
+        } catch (Exception e) {
+            Log.e(TAG, "storeMoviePage: Problem storing page " + envelope.page, e);
+        }
+    }
+
+    private static String getCategory(int requestType) {
+        return requestType == MovieEnvelope.TYPE_TOPRATED
+                ? MovieCategoryEntry.CATEGORY_TOPRATED
+                : MovieCategoryEntry.CATEGORY_POPULAR;
+    }
+
+    /**
+     * Creates an observable that fetches a single page of popular or top rated movies from the
+     * Movie Database API and stores it in the database.
+     *
+     * @param requestType Type of movie request, either popular or top rated
+     * @param page Page of results to fetch, the first page is 1
+     * @param refresh True to skip the HTTP cache and fetch the page from the server
+     * @return Observable that emits a single MovieEnvelope object before termination
+     */
+    private Observable<MovieEnvelope> getMoviePage(final int requestType, int page, boolean refresh) {
+        Observable<MovieEnvelope> observable;
+        String cacheControl = refresh ? MovieService.CACHE_CONTROL_REFRESH : null;
+
+        // Only the first page is requested while the user waits, later pages are prefetched
+        MovieService service = (page == 1)
+                ? MovieServiceManager.getService()
+                : MovieServiceManager.getBackgroundService();
+
+        if(requestType == MovieEnvelope.TYPE_TOPRATED) {
+            observable = service.getTopRatedMovies(apiKey, page, cacheControl);
+        } else {
+            observable = service.getPopularMovies(apiKey, page, cacheControl);
+        }
+
+        return observable.map(new Function<MovieEnvelope, MovieEnvelope>() {
+            @Override
+            public MovieEnvelope apply(MovieEnvelope movieEnvelope) throws Exception {
+                movieEnvelope.resultType = requestType;
+                movieEnvelope.fetchedAt = System.currentTimeMillis();
+                return movieEnvelope;
+            }
+        }).doOnNext(new Consumer<MovieEnvelope>() {
+            @Override
+            public void accept(MovieEnvelope movieEnvelope) throws Exception {
+                storeMoviePage(movieEnvelope);
+            }
+        });
+    }
+
+    private int getLoadedPage(int requestType) {
+        switch(requestType) {
+            case MovieEnvelope.TYPE_TOPRATED:
+                return topratedPage;
+
+            case MovieEnvelope.TYPE_FAVORITE:
+                return favoritesPage;
+
+            default:
+                return popularPage;
+        }
+    }
+
+    /**
+     * Records the page information returned by the API, or read with a page of favorites, so the
+     * next page can be requested. Envelopes created from cached lists do not carry page
+     * information and are ignored.
+     *
+     * @param envelope MovieEnvelope returned from the API
+     */
+    private void updatePageInfo(MovieEnvelope envelope) {
+        if(envelope.page == null || envelope.totalPages == null) {
+            return;
+        }
+
+        switch(envelope.resultType) {
+            case MovieEnvelope.TYPE_POPULAR:
+                popularPage = envelope.page;
+                popularTotalPages = envelope.totalPages;
+                break;
+
+            case MovieEnvelope.TYPE_TOPRATED:
+                topratedPage = envelope.page;
+                topratedTotalPages = envelope.totalPages;
+                break;
+
+            case MovieEnvelope.TYPE_FAVORITE:
+                favoritesPage = envelope.page;
+                favoritesTotalPages = envelope.totalPages;
+                favoritesLastAddedAt = envelope.lastAddedAt;
+                favoritesLastMovieId = envelope.lastMovieId;
+                break;
         }
     }
 
@@ -225,45 +629,179 @@ public class MovieGridPresenter extends Presenter<MovieGridActivity> {
         if(!favorites.isEmpty()) {
             return Observable.just(new MovieEnvelope(favorites, MovieEnvelope.TYPE_FAVORITE));
         } else {
-            return Observable.create(new ObservableOnSubscribe<MovieEnvelope>() {
-                @Override
-                public void subscribe(ObservableEmitter<MovieEnvelope> e) throws Exception {
-                    List<Movie> movies = new ArrayList<>();
-
-                    Cursor results = resolver.query(MovieContract.MovieFavoriteEntry.CONTENT_URI, null, null, null, null);
-
-                    // Build up the list of movies from the favorites stored in the database
-                    if (results != null) {
-                        while (results.moveToNext()) {
-                            Movie movie = new Movie();
-
-                            int idIndex = results.getColumnIndex(MovieContract.MovieFavoriteEntry.COLUMN_MOVIEID);
-                            int posterPathIndex = results.getColumnIndex(MovieContract.MovieFavoriteEntry.COLUMN_POSTERPATH);
-                            int overviewIndex = results.getColumnIndex(MovieContract.MovieFavoriteEntry.COLUMN_OVERVIEW);
-                            int releaseDateIndex = results.getColumnIndex(MovieContract.MovieFavoriteEntry.COLUMN_RELEASEDATE);
-                            int titleIndex = results.getColumnIndex(MovieContract.MovieFavoriteEntry.COLUMN_TITLE);
-                            int voteAverageIndex = results.getColumnIndex(MovieContract.MovieFavoriteEntry.COLUMN_RATING);
-                            int posterIndex = results.getColumnIndex(MovieContract.MovieFavoriteEntry.COLUMN_POSTER);
-
-                            movie.id = results.getInt(idIndex);
-                            movie.posterPath = results.getString(posterPathIndex);
-                            movie.overview = results.getString(overviewIndex);
-                            movie.releaseDate = results.getString(releaseDateIndex);
-                            movie.title = results.getString(titleIndex);
-                            movie.voteAverage = results.getDouble(voteAverageIndex);
-                            movie.poster = results.getBlob(posterIndex);
-
-                            movies.add(movie);
-                        }
+            return getFavoritePage(1, 0, 0);
+        }
+    }
 
-                        results.close();
+    /**
+     * Creates an observable that reads a page of favorites from the database. Each page continues
+     * after the sort key of the last favorite of the previous page, so reading a page takes the
+     * same time no matter how many favorites are stored or how far the user has scrolled.
+     *
+     * @param page Page to read, the first page is 1
+     * @param lastAddedAt Added time of the last favorite of the previous page, ignored for page 1
+     * @param lastMovieId Movie id of the last favorite of the previous page, ignored for page 1
+     * @return Observable that emits a single MovieEnvelope object before termination
+     */
+    private Observable<MovieEnvelope> getFavoritePage(final int page, final long lastAddedAt,
+                                                      final int lastMovieId) {
+        return Observable.create(new ObservableOnSubscribe<MovieEnvelope>() {
+            @Override
+            public void subscribe(ObservableEmitter<MovieEnvelope> e) throws Exception {
+                List<Movie> movies = new ArrayList<>();
+                MovieEnvelope envelope = new MovieEnvelope(movies, MovieEnvelope.TYPE_FAVORITE);
+
+                Uri uri = page == 1
+                        ? MovieContract.MovieFavoriteEntry.buildPageUri(FAVORITES_PAGE_SIZE)
+                        : MovieContract.MovieFavoriteEntry.buildPageUri(FAVORITES_PAGE_SIZE, lastAddedAt, lastMovieId);
+
+                Cursor results = resolver.query(uri,
+                        MovieContract.MovieFavoriteEntry.GRID_PROJECTION, null, null, null);
+
+                // Build up the list of movies from the favorites stored in the database
+                if (results != null) {
+                    while (results.moveToNext()) {
+                        Movie movie = readMovie(results);
+                        movies.add(movie);
+
+                        envelope.lastAddedAt = movie.addedAt;
+                        envelope.lastMovieId = movie.id;
                     }
 
-                    e.onNext(new MovieEnvelope(movies, MovieEnvelope.TYPE_FAVORITE));
-                    e.onComplete();
+                    results.close();
                 }
-            });
+
+                // A full page means there may be more, an empty next page ends the list
+                envelope.page = page;
+                envelope.totalPages = movies.size() == FAVORITES_PAGE_SIZE ? page + 1 : page;
+
+                e.onNext(envelope);
+                e.onComplete();
+            }
+        });
+    }
+
+    /**
+     * Creates an observable that reads a single favorite from the database.
+     *
+     * @param movieId Id of the movie
+     * @return Observable that emits a single MovieEnvelope, with an empty list if the movie is
+     * not a favorite
+     */
+    private Observable<MovieEnvelope> getFavorite(final int movieId) {
+        return Observable.create(new ObservableOnSubscribe<MovieEnvelope>() {
+            @Override
+            public void subscribe(ObservableEmitter<MovieEnvelope> e) throws Exception {
+                List<Movie> movies = new ArrayList<>();
+
+                Uri uri = MovieContract.MovieFavoriteEntry.CONTENT_URI.buildUpon()
+                        .appendPath(String.valueOf(movieId))
+                        .build();
+
+                Cursor results = resolver.query(uri,
+                        MovieContract.MovieFavoriteEntry.GRID_PROJECTION, null, null, null);
+
+                if(results != null) {
+                    if(results.moveToFirst()) {
+                        movies.add(readMovie(results));
+                    }
+
+                    results.close();
+                }
+
+                e.onNext(new MovieEnvelope(movies, MovieEnvelope.TYPE_FAVORITE));
+                e.onComplete();
+            }
+        });
+    }
+
+    /**
+     * Applies a change to a single favorite to the loaded favorites and passes it on to the view
+     * if it shows the favorites, or keeps it for the view if it is unbound.
+     *
+     * @param movieId Id of the movie that changed
+     * @param movie Movie as it is stored now, or null if it is no longer a favorite
+     */
+    private void applyFavoriteChange(int movieId, Movie movie) {
+        FavoriteChange change = FavoriteChange.apply(favorites, movieId, movie,
+                favoritesPage >= favoritesTotalPages, favoritesLastAddedAt, favoritesLastMovieId);
+
+        if(change == null || selectedRequestType != MovieEnvelope.TYPE_FAVORITE) {
+            return;
+        }
+
+        if(view != null) {
+            change.applyTo(view);
+        } else if(pendingChanges != null) {
+            pendingChanges.add(change);
+        }
+    }
+
+    /**
+     * Creates an observable that searches the favorites and the stored lists. The search runs
+     * entirely on the device.
+     *
+     * @param text Text entered by the user
+     * @return Observable that emits a single MovieEnvelope object before termination
+     */
+    private Observable<MovieEnvelope> getSearchResults(final String text) {
+        return Observable.create(new ObservableOnSubscribe<MovieEnvelope>() {
+            @Override
+            public void subscribe(ObservableEmitter<MovieEnvelope> e) throws Exception {
+                List<Movie> movies = new ArrayList<>();
+
+                Cursor results = resolver.query(MovieContract.MovieSearchEntry.buildSearchUri(text),
+                        null, null, null, null);
+
+                if(results != null) {
+                    while(results.moveToNext()) {
+                        movies.add(readMovie(results));
+                    }
+
+                    results.close();
+                }
+
+                e.onNext(new MovieEnvelope(movies, MovieEnvelope.TYPE_SEARCH));
+                e.onComplete();
+            }
+        });
+    }
+
+    /**
+     * Creates a Movie from the current row of a favorites, stored list or search cursor. They all
+     * use the same names for the movie columns, the poster hash and the added time are only read
+     * if the cursor has them.
+     *
+     * @param results Cursor positioned on the row to read
+     * @return Movie
+     */
+    private static Movie readMovie(Cursor results) {
+        Movie movie = new Movie();
+
+        int idIndex = results.getColumnIndex(MovieContract.MovieFavoriteEntry.COLUMN_MOVIEID);
+        int posterPathIndex = results.getColumnIndex(MovieContract.MovieFavoriteEntry.COLUMN_POSTERPATH);
+        int overviewIndex = results.getColumnIndex(MovieContract.MovieFavoriteEntry.COLUMN_OVERVIEW);
+        int releaseDateIndex = results.getColumnIndex(MovieContract.MovieFavoriteEntry.COLUMN_RELEASEDATE);
+        int titleIndex = results.getColumnIndex(MovieContract.MovieFavoriteEntry.COLUMN_TITLE);
+        int voteAverageIndex = results.getColumnIndex(MovieContract.MovieFavoriteEntry.COLUMN_RATING);
+        int posterHashIndex = results.getColumnIndex(MovieContract.MovieFavoriteEntry.COLUMN_POSTER_HASH);
+        int addedAtIndex = results.getColumnIndex(MovieContract.MovieFavoriteEntry.COLUMN_ADDED_AT);
+
+        movie.id = results.getInt(idIndex);
+        movie.posterPath = results.getString(posterPathIndex);
+        movie.overview = results.getString(overviewIndex);
+        movie.releaseDate = results.getString(releaseDateIndex);
+        movie.title = results.getString(titleIndex);
+        movie.voteAverage = results.getDouble(voteAverageIndex);
+
+        if(posterHashIndex != -1) {
+            movie.posterHash = results.getString(posterHashIndex);
+        }
+        if(addedAtIndex != -1) {
+            movie.addedAt = results.getLong(addedAtIndex);
         }
+
+        return movie;
     }
 
     /**
@@ -306,10 +844,12 @@ public class MovieGridPresenter extends Presenter<MovieGridActivity> {
             switch (envelope.resultType) {
                 case MovieEnvelope.TYPE_POPULAR:
                     popular = movies;
+                    popularFetchedAt = envelope.fetchedAt;
                     break;
 
                 case MovieEnvelope.TYPE_TOPRATED:
                     toprated = movies;
+                    topratedFetchedAt = envelope.fetchedAt;
                     break;
 
                 case MovieEnvelope.TYPE_FAVORITE:
@@ -320,7 +860,13 @@ public class MovieGridPresenter extends Presenter<MovieGridActivity> {
                     }
 
                     break;
+
+                case MovieEnvelope.TYPE_SEARCH:
+                    searchResults = movies;
+                    break;
             }
+            updatePageInfo(envelope);
+
             Log.d(TAG, "onNext: Obtained list of movies from observable " + movies.toString());
 
             showData(movies);
@@ -342,10 +888,105 @@ public class MovieGridPresenter extends Presenter<MovieGridActivity> {
         public void onComplete() {}
     }
 
+    /**
+     * Observer inner class that appends an additional page of movies to the displayed list.
+     * Errors are only logged, the next scroll past the threshold will request the page again.
+     */
+    private class NextPageObserver extends DisposableObserver<MovieEnvelope> {
+
+        @Override
+        public void onNext(MovieEnvelope envelope) {
+            isLoadingNextPage = false;
+
+            // A background refresh may have reset the list to its first page in the meantime
+            if(envelope.page == null || envelope.page != getLoadedPage(envelope.resultType) + 1) {
+                Log.d(TAG, "onNext: Discarding page " + envelope.page + ", list was refreshed");
+                return;
+            }
+
+            switch (envelope.resultType) {
+                case MovieEnvelope.TYPE_POPULAR:
+                    popular.addAll(envelope.movies);
+                    break;
+
+                case MovieEnvelope.TYPE_TOPRATED:
+                    toprated.addAll(envelope.movies);
+                    break;
+
+                case MovieEnvelope.TYPE_FAVORITE:
+                    favorites.addAll(envelope.movies);
+                    break;
+            }
+            updatePageInfo(envelope);
+
+            Log.d(TAG, "onNext: Obtained page " + envelope.page + " of " + envelope.totalPages);
+
+            if(view != null) {
+                view.appendData(envelope.movies);
+            } else {
+                // The unbound view missed the page, it has to be given the whole list
+                pendingChanges = null;
+            }
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            Log.e(TAG, "onError: NextPageObserver error", e);
+            isLoadingNextPage = false;
+        }
+
+        @Override
+        public void onComplete() {}
+    }
+
+    /**
+     * Observer inner class that applies the current state of a single favorite that changed.
+     */
+    private class FavoriteChangeObserver extends DisposableObserver<MovieEnvelope> {
+
+        private final int movieId;
+
+        FavoriteChangeObserver(int movieId) {
+            this.movieId = movieId;
+        }
+
+        @Override
+        public void onNext(MovieEnvelope envelope) {
+            // The favorites were cleared in the meantime, the next load reads the change
+            if(favoritesPage == 0) {
+                return;
+            }
+
+            applyFavoriteChange(movieId, envelope.movies.isEmpty() ? null : envelope.movies.get(0));
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            Log.e(TAG, "onError: FavoriteChangeObserver error, reloading favorites", e);
+            clearFavorites();
+        }
+
+        @Override
+        public void onComplete() {}
+    }
+
+    /**
+     * Drops the loaded favorites so they are read again the next time they are shown.
+     */
+    private void clearFavorites() {
+        favoriteChanges.clear();
+
+        favorites = new ArrayList<>();
+        favoritesPage = 0;
+        favoritesTotalPages = 0;
+        pendingChanges = null;
+    }
+
     /**
      * If a change is made in the ContentProvider to the list of favorite movies this object will
-     * be notified. When returning from a MovieDetailActivity after making a change to the favorites
-     * the movie grid will not be updated to reflect the change unless the data is forced to reload.
+     * be notified. The provider notifies the uri of the favorite that changed, only that favorite
+     * is read again and the change is applied to the loaded list. Several changes at once are
+     * notified on the favorites uri, then the list is cleared and read again when it is shown.
      */
     private class FavoriteContentObserver extends ContentObserver {
 
@@ -353,18 +994,43 @@ public class MovieGridPresenter extends Presenter<MovieGridActivity> {
             super(handler);
         }
 
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
         /**
-         * If the favorite list is displayed and a change occurs in the ContentProvider force the data
-         * to reload by clearing the movies array.
-         *
          * @param selfChange True if this is a self-change notification
+         * @param uri Uri of the favorite that changed, the favorites uri or null if unknown
          */
         @Override
-        public void onChange(boolean selfChange) {
-            super.onChange(selfChange);
+        public void onChange(boolean selfChange, Uri uri) {
+            List<String> segments = uri == null ? null : uri.getPathSegments();
+
+            if(segments == null || segments.size() != 2
+                    || !MovieContract.PATH_FAVORITES.equals(segments.get(0))
+                    || !TextUtils.isDigitsOnly(segments.get(1))) {
+
+                Log.d(TAG, "onChange: Change to favorites observed, clearing list.");
+                clearFavorites();
+                return;
+            }
+
+            // Nothing is loaded, the next load reads the change
+            if(favoritesPage == 0) {
+                return;
+            }
+
+            int movieId = Integer.parseInt(segments.get(1));
+            Log.d(TAG, "onChange: Change to favorite " + movieId + " observed.");
+
+            DisposableObserver<MovieEnvelope> observer = new FavoriteChangeObserver(movieId);
+            favoriteChanges.add(observer);
 
-            Log.d(TAG, "onChange: Change to favorites observed, clearing list.");
-            favorites = new ArrayList<>();
+            getFavorite(movieId)
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .subscribeOn(Schedulers.io())
+                    .subscribe(observer);
         }
     }
 
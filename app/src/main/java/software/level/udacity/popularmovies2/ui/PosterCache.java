@@ -0,0 +1,112 @@
+package software.level.udacity.popularmovies2.ui;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.support.v4.util.LruCache;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import software.level.udacity.popularmovies2.api.BitmapPool;
+
+/**
+ * In memory cache of posters decoded from the poster store, shared by the grid and detail
+ * adapters. Entries are keyed by movie id and the size the poster was decoded for, and the cache
+ * is bounded by the number of bytes the bitmaps use rather than by the number of entries.
+ *
+ * Every bitmap is reference counted, the cache holds one reference and each view showing it
+ * holds another. When the last reference is released the bitmap goes to the {@link BitmapPool}
+ * so its memory can be reused by the next decode. All methods must be called on the main thread.
+ */
+public class PosterCache {
+
+    // Share of the maximum heap the decoded posters may use
+    private static final int HEAP_FRACTION = 8;
+
+    private static final Map<Bitmap, Integer> references = new IdentityHashMap<>();
+
+    private static final LruCache<String, Bitmap> cache =
+            new LruCache<String, Bitmap>((int) (Runtime.getRuntime().maxMemory() / HEAP_FRACTION)) {
+                @Override
+                protected int sizeOf(String key, Bitmap bitmap) {
+                    return bitmap.getByteCount();
+                }
+
+                @Override
+                protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                    if(oldValue != newValue) {
+                        release(oldValue);
+                    }
+                }
+            };
+
+    private PosterCache() {}
+
+    public static Bitmap get(int movieId, int width, int height) {
+        return cache.get(getKey(movieId, width, height));
+    }
+
+    public static void put(int movieId, int width, int height, Bitmap bitmap) {
+        String key = getKey(movieId, width, height);
+
+        if(cache.get(key) != bitmap) {
+            retain(bitmap);
+            cache.put(key, bitmap);
+        }
+    }
+
+    /**
+     * Adds a reference to a bitmap that is about to be displayed.
+     *
+     * @param bitmap Bitmap decoded from the poster store
+     */
+    static void retain(Bitmap bitmap) {
+        Integer count = references.get(bitmap);
+        references.put(bitmap, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Removes a reference to a bitmap. Once nothing references it the bitmap is pooled.
+     *
+     * @param bitmap Bitmap previously passed to {@link #retain(Bitmap)}
+     */
+    static void release(Bitmap bitmap) {
+        Integer count = references.get(bitmap);
+
+        if(count == null) {
+            return;
+        }
+
+        if(count > 1) {
+            references.put(bitmap, count - 1);
+        } else {
+            references.remove(bitmap);
+            BitmapPool.put(bitmap);
+        }
+    }
+
+    /**
+     * Releases memory according to the level passed to
+     * {@link android.app.Application#onTrimMemory(int)}. The cache is emptied once the UI is
+     * hidden, since no poster is visible then, and when the system is critically low on memory.
+     * At lower levels it is only halved so the grid keeps its posters. Posters released by the
+     * cache are not pooled either, the memory is given back.
+     *
+     * @param level Trim level from ComponentCallbacks2
+     */
+    public static void trimMemory(int level) {
+        if(level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            cache.evictAll();
+        } else if(level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            cache.trimToSize(cache.maxSize() / 2);
+        } else {
+            return;
+        }
+
+        BitmapPool.clear();
+    }
+
+    private static String getKey(int movieId, int width, int height) {
+        return movieId + ":" + width + "x" + height;
+    }
+}
@@ -0,0 +1,171 @@
+package software.level.udacity.popularmovies2.ui;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import software.level.udacity.popularmovies2.R;
+import software.level.udacity.popularmovies2.api.MovieServiceUtils;
+
+/**
+ * Decodes posters from the poster store on a background thread and sets them on an ImageView.
+ * Decoded posters are kept in the {@link PosterCache} and shown immediately the next time.
+ *
+ * The decode that is running for a view is kept in a view tag. Loading another poster into the
+ * same view, as happens when a ViewHolder is rebound, cancels it so a recycled view never shows
+ * a poster that belongs to a different movie. All methods must be called on the main thread.
+ *
+ * The bitmap a view shows is kept in a second tag and holds a reference in the PosterCache. It
+ * is released when the view shows something else or is cleared, which lets the bitmap go back
+ * to the BitmapPool once the cache has also let go of it.
+ */
+public class PosterLoader {
+
+    // Decoding is CPU bound, two threads keep up with scrolling without starving the UI thread
+    private static final int DECODE_THREADS = 2;
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(DECODE_THREADS);
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private PosterLoader() {}
+
+    /**
+     * Shows the cached poster, or shows the placeholder and starts decoding the poster into the
+     * view. The poster is subsampled to the requested size, or to the size of the view if no
+     * width is requested.
+     *
+     * @param view ImageView to show the poster in
+     * @param movieId Id of the movie the poster belongs to
+     * @param file Poster file in the poster store
+     * @param reqWidth Width the poster is displayed at in pixels, 0 to use the view width
+     * @param reqHeight Height the poster is displayed at in pixels, 0 if only the width matters
+     */
+    public static void load(ImageView view, int movieId, File file, int reqWidth, int reqHeight) {
+        cancel(view);
+
+        int width = reqWidth > 0 ? reqWidth : view.getWidth();
+        int height = reqWidth > 0 ? reqHeight : view.getHeight();
+
+        Bitmap cached = PosterCache.get(movieId, width, height);
+        if(cached != null) {
+            show(view, cached);
+            return;
+        }
+
+        view.setImageResource(R.drawable.poster_placeholder);
+        releaseBitmap(view);
+
+        DecodeTask task = new DecodeTask(view, movieId, file, width, height);
+        view.setTag(R.id.tag_poster_load, task);
+        task.future = executor.submit(task);
+    }
+
+    /**
+     * Cancels any decode for the view and releases the poster it shows. Must be called before
+     * the view is recycled or before another image source takes over the view.
+     *
+     * @param view ImageView that may show a poster from the poster store
+     */
+    public static void clear(ImageView view) {
+        cancel(view);
+
+        if(view.getTag(R.id.tag_poster_bitmap) != null) {
+            view.setImageResource(R.drawable.poster_placeholder);
+            releaseBitmap(view);
+        }
+    }
+
+    private static void show(ImageView view, Bitmap bitmap) {
+        PosterCache.retain(bitmap);
+        view.setImageBitmap(bitmap);
+
+        // Release after the view has switched so the previous bitmap is no longer drawn
+        releaseBitmap(view);
+        view.setTag(R.id.tag_poster_bitmap, bitmap);
+    }
+
+    private static void releaseBitmap(ImageView view) {
+        Object tag = view.getTag(R.id.tag_poster_bitmap);
+
+        if(tag instanceof Bitmap) {
+            view.setTag(R.id.tag_poster_bitmap, null);
+            PosterCache.release((Bitmap) tag);
+        }
+    }
+
+    /**
+     * Cancels the decode running for the view, if there is one.
+     *
+     * @param view ImageView that may have a poster being decoded into it
+     */
+    private static void cancel(ImageView view) {
+        Object tag = view.getTag(R.id.tag_poster_load);
+
+        if(tag instanceof DecodeTask) {
+            ((DecodeTask) tag).cancel();
+            view.setTag(R.id.tag_poster_load, null);
+        }
+    }
+
+    private static class DecodeTask implements Runnable {
+
+        private final ImageView view;
+        private final int movieId;
+        private final File file;
+        private final int width;
+        private final int height;
+
+        private Future<?> future;
+        private volatile boolean cancelled;
+
+        DecodeTask(ImageView view, int movieId, File file, int width, int height) {
+            this.view = view;
+            this.movieId = movieId;
+            this.file = file;
+            this.width = width;
+            this.height = height;
+        }
+
+        void cancel() {
+            cancelled = true;
+            if(future != null) {
+                future.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            if(cancelled) {
+                return;
+            }
+
+            final Bitmap bitmap = MovieServiceUtils.decodeImageFile(file, width, height);
+
+            if(bitmap == null) {
+                return;
+            }
+
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    // Cached even if no longer needed here, the movie is likely shown again soon
+                    PosterCache.put(movieId, width, height, bitmap);
+
+                    // The view may have been rebound while decoding
+                    if(cancelled || view.getTag(R.id.tag_poster_load) != DecodeTask.this) {
+                        return;
+                    }
+
+                    view.setTag(R.id.tag_poster_load, null);
+                    show(view, bitmap);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package software.level.udacity.popularmovies2.ui;
+
+import android.content.Context;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import com.squareup.picasso.Picasso;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import software.level.udacity.popularmovies2.api.MovieServiceUtils;
+import software.level.udacity.popularmovies2.api.model.Movie;
+
+/**
+ * Scroll listener that fetches the posters of the rows about to scroll into view, so they are
+ * in Picasso's caches before they are bound.
+ *
+ * The number of rows fetched ahead grows with the scroll speed. Reversing the scroll direction
+ * cancels the prefetches in the old direction, as does {@link #reset()} when the grid switches to
+ * a different list. Favorites with a stored poster are skipped, and nothing is fetched while the
+ * grid settles after a fling, since those rows are scrolled past before they are seen.
+ */
+public class PosterPrefetcher extends RecyclerView.OnScrollListener {
+
+    // Fewest and most rows fetched ahead of the visible rows
+    private static final int MIN_ROWS = 2;
+    private static final int MAX_ROWS = 8;
+
+    // Fetch far enough ahead to cover this much scrolling at the current speed
+    private static final float LOOKAHEAD_SECONDS = 0.5f;
+
+    // onScrolled is called about once per frame
+    private static final int FRAMES_PER_SECOND = 60;
+
+    private final Context context;
+    private final GridLayoutManager layoutManager;
+    private final MovieGridAdapter adapter;
+    private final String posterSize;
+
+    // Tag for the prefetches of the current direction, replaced whenever they are cancelled
+    private Object tag = new Object();
+    private int direction;
+
+    // Poster URLs most recently requested with the current tag, in access order. Only about two
+    // prefetch windows are remembered, rows further back may have left Picasso's caches again.
+    private final Set<String> requested = Collections.newSetFromMap(
+            new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > 2 * MAX_ROWS * layoutManager.getSpanCount();
+                }
+            });
+
+    public PosterPrefetcher(Context context, GridLayoutManager layoutManager,
+                            MovieGridAdapter adapter, String posterSize) {
+        this.context = context.getApplicationContext();
+        this.layoutManager = layoutManager;
+        this.adapter = adapter;
+        this.posterSize = posterSize;
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if(dy == 0 || recyclerView.getScrollState() == RecyclerView.SCROLL_STATE_SETTLING) {
+            return;
+        }
+
+        int newDirection = dy > 0 ? 1 : -1;
+        if(newDirection != direction) {
+            reset();
+            direction = newDirection;
+        }
+
+        int span = layoutManager.getSpanCount();
+        int rows = getRowsAhead(Math.abs(dy));
+
+        if(direction > 0) {
+            int last = layoutManager.findLastVisibleItemPosition();
+            for(int position = last + 1; position <= last + rows * span; position++) {
+                prefetch(position);
+            }
+        } else {
+            int first = layoutManager.findFirstVisibleItemPosition();
+            for(int position = first - 1; position >= first - rows * span; position--) {
+                prefetch(position);
+            }
+        }
+    }
+
+    /**
+     * Cancels every prefetch that has not completed yet. Called when the scroll direction
+     * reverses or the grid shows a different list.
+     */
+    public void reset() {
+        Picasso.with(context).cancelTag(tag);
+
+        tag = new Object();
+        direction = 0;
+        requested.clear();
+    }
+
+    /**
+     * Converts the distance scrolled in the last frame into the number of rows to fetch ahead.
+     */
+    private int getRowsAhead(int distance) {
+        View child = layoutManager.getChildAt(0);
+        if(child == null || child.getHeight() == 0) {
+            return MIN_ROWS;
+        }
+
+        float rowsPerSecond = distance * FRAMES_PER_SECOND / (float) child.getHeight();
+        int rows = (int) Math.ceil(rowsPerSecond * LOOKAHEAD_SECONDS);
+
+        return Math.max(MIN_ROWS, Math.min(MAX_ROWS, rows));
+    }
+
+    private void prefetch(int position) {
+        Movie movie = adapter.getMovie(position);
+        if(movie == null || movie.posterHash != null || movie.posterPath == null) {
+            return;
+        }
+
+        URL url = MovieServiceUtils.buildImageURL(movie.posterPath, posterSize);
+        if(url == null || !requested.add(url.toString())) {
+            return;
+        }
+
+        Picasso.with(context)
+                .load(url.toString())
+                .priority(Picasso.Priority.LOW)
+                .tag(tag)
+                .fetch();
+    }
+}
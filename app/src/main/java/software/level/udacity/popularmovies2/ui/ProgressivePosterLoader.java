@@ -0,0 +1,97 @@
+package software.level.udacity.popularmovies2.ui;
+
+import android.widget.ImageView;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.NetworkPolicy;
+import com.squareup.picasso.Picasso;
+
+import software.level.udacity.popularmovies2.R;
+
+/**
+ * Loads a poster from the image service in up to three steps so something better than the
+ * placeholder is shown as early as possible:
+ *
+ * 1. The full size poster, if it is already in Picasso's memory or disk cache.
+ * 2. Otherwise a small preview, shown as soon as it arrives.
+ * 3. The full size poster from the network, replacing the preview.
+ *
+ * The preview is scaled into the same ImageView the full poster is shown in, so the swap does
+ * not change the layout. Binding the view again cancels every remaining step, Picasso only keeps
+ * the latest request for a view.
+ */
+public class ProgressivePosterLoader {
+
+    private ProgressivePosterLoader() {}
+
+    /**
+     * @param view ImageView to show the poster in
+     * @param previewUrl URL of a smaller version of the poster, or null to skip the preview
+     * @param previewCachedOnly True if the preview should only be shown when it is already cached
+     * @param fullUrl URL of the poster at the size it is displayed at
+     * @param tag Tag for every request, see ImagePipeline
+     */
+    public static void load(final ImageView view, final String previewUrl,
+                            final boolean previewCachedOnly, final String fullUrl, final Object tag) {
+
+        Picasso.with(view.getContext())
+                .load(fullUrl)
+                .networkPolicy(NetworkPolicy.OFFLINE)
+                .placeholder(R.drawable.poster_placeholder)
+                .tag(tag)
+                .into(view, new Callback() {
+                    @Override
+                    public void onSuccess() {}
+
+                    @Override
+                    public void onError() {
+                        loadPreview(view, previewUrl, previewCachedOnly, fullUrl, tag);
+                    }
+                });
+    }
+
+    private static void loadPreview(final ImageView view, String previewUrl,
+                                    boolean previewCachedOnly, final String fullUrl, final Object tag) {
+        if(previewUrl == null || previewUrl.equals(fullUrl)) {
+            loadFull(view, fullUrl, tag);
+            return;
+        }
+
+        Callback callback = new Callback() {
+            @Override
+            public void onSuccess() {
+                loadFull(view, fullUrl, tag);
+            }
+
+            @Override
+            public void onError() {
+                loadFull(view, fullUrl, tag);
+            }
+        };
+
+        if(previewCachedOnly) {
+            Picasso.with(view.getContext())
+                    .load(previewUrl)
+                    .networkPolicy(NetworkPolicy.OFFLINE)
+                    .noPlaceholder()
+                    .noFade()
+                    .tag(tag)
+                    .into(view, callback);
+        } else {
+            Picasso.with(view.getContext())
+                    .load(previewUrl)
+                    .noPlaceholder()
+                    .tag(tag)
+                    .into(view, callback);
+        }
+    }
+
+    private static void loadFull(ImageView view, String fullUrl, Object tag) {
+        // Keep showing the preview or placeholder until the full poster replaces it
+        Picasso.with(view.getContext())
+                .load(fullUrl)
+                .noPlaceholder()
+                .tag(tag)
+                .into(view);
+    }
+}
@@ -0,0 +1,189 @@
+package software.level.udacity.popularmovies2.api;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.List;
+
+import software.level.udacity.popularmovies2.api.model.Movie;
+import software.level.udacity.popularmovies2.api.model.MovieDetailsEnvelope;
+import software.level.udacity.popularmovies2.api.model.MovieEnvelope;
+import software.level.udacity.popularmovies2.api.model.MovieReview;
+import software.level.udacity.popularmovies2.api.model.MovieReviewEnvelope;
+import software.level.udacity.popularmovies2.api.model.MovieTrailer;
+import software.level.udacity.popularmovies2.api.model.MovieTrailerEnvelope;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that the streaming adapters decode the Movie Database payloads into the same models as
+ * the reflective adapters Gson used before, including null values, fields the models do not know
+ * and the responses nested by append_to_response.
+ */
+public class MovieTypeAdapterFactoryTest {
+
+    private static final String POPULAR_PAGE = "tmdb/popular_page.json";
+    private static final String MOVIE_DETAILS = "tmdb/movie_details.json";
+
+    private final Gson reflective = new Gson();
+
+    private final Gson streaming = new GsonBuilder()
+            .registerTypeAdapterFactory(new MovieTypeAdapterFactory())
+            .create();
+
+    @Test
+    public void moviePageMatchesReflectiveAdapter() throws IOException {
+        MovieEnvelope expected = read(reflective, POPULAR_PAGE, MovieEnvelope.class);
+        MovieEnvelope actual = read(streaming, POPULAR_PAGE, MovieEnvelope.class);
+
+        assertEquals(3, actual.movies.size());
+        assertMovieEnvelopeEquals(expected, actual);
+    }
+
+    @Test
+    public void moviePageKeepsNullValues() throws IOException {
+        MovieEnvelope envelope = read(streaming, POPULAR_PAGE, MovieEnvelope.class);
+
+        assertNull(envelope.movies.get(1).posterPath);
+        assertNull(envelope.movies.get(2).overview);
+        assertNull(envelope.movies.get(2).voteAverage);
+    }
+
+    @Test
+    public void unknownFieldsAreSkipped() throws IOException {
+        MovieEnvelope envelope = read(streaming, POPULAR_PAGE, MovieEnvelope.class);
+
+        // Known fields follow the unknown arrays and objects in every movie and in the envelope
+        assertEquals(Integer.valueOf(297761), envelope.movies.get(0).id);
+        assertEquals(Double.valueOf(5.91), envelope.movies.get(0).voteAverage);
+        assertEquals("1994-09-23", envelope.movies.get(2).releaseDate);
+        assertEquals(Integer.valueOf(982), envelope.totalPages);
+    }
+
+    @Test
+    public void appendedDetailsMatchReflectiveAdapter() throws IOException {
+        MovieDetailsEnvelope expected = read(reflective, MOVIE_DETAILS, MovieDetailsEnvelope.class);
+        MovieDetailsEnvelope actual = read(streaming, MOVIE_DETAILS, MovieDetailsEnvelope.class);
+
+        assertEquals(Integer.valueOf(550), actual.id);
+        assertEquals(2, actual.videos.trailers.size());
+        assertEquals(1, actual.reviews.reviews.size());
+
+        assertDetailsEquals(expected, actual);
+    }
+
+    @Test
+    public void appendedDetailsKeepNullValues() throws IOException {
+        MovieDetailsEnvelope details = read(streaming, MOVIE_DETAILS, MovieDetailsEnvelope.class);
+        MovieTrailer trailer = details.videos.trailers.get(1);
+
+        assertNull(details.videos.id);
+        assertNull(trailer.name);
+        assertNull(trailer.size);
+        assertEquals("Featurette", trailer.type);
+    }
+
+    @Test
+    public void moviePageSurvivesRoundTrip() throws IOException {
+        MovieEnvelope envelope = read(streaming, POPULAR_PAGE, MovieEnvelope.class);
+
+        MovieEnvelope copy = streaming.fromJson(streaming.toJson(envelope), MovieEnvelope.class);
+
+        assertMovieEnvelopeEquals(envelope, copy);
+    }
+
+    @Test
+    public void detailsSurviveRoundTrip() throws IOException {
+        MovieDetailsEnvelope details = read(streaming, MOVIE_DETAILS, MovieDetailsEnvelope.class);
+
+        MovieDetailsEnvelope copy = streaming.fromJson(streaming.toJson(details), MovieDetailsEnvelope.class);
+
+        assertDetailsEquals(details, copy);
+    }
+
+    @Test
+    public void nullDocumentsDecodeToNull() {
+        assertNull(streaming.fromJson("null", MovieEnvelope.class));
+        assertNull(streaming.fromJson("null", MovieDetailsEnvelope.class));
+    }
+
+    private static <T> T read(Gson gson, String resource, Class<T> type) throws IOException {
+        InputStream in = MovieTypeAdapterFactoryTest.class.getClassLoader().getResourceAsStream(resource);
+        assertNotNull("Missing test resource " + resource, in);
+
+        Reader reader = new InputStreamReader(in, "UTF-8");
+        try {
+            return gson.fromJson(reader, type);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void assertMovieEnvelopeEquals(MovieEnvelope expected, MovieEnvelope actual) {
+        assertEquals(expected.page, actual.page);
+        assertEquals(expected.totalResults, actual.totalResults);
+        assertEquals(expected.totalPages, actual.totalPages);
+
+        List<Movie> expectedMovies = expected.movies;
+        List<Movie> actualMovies = actual.movies;
+        assertEquals(expectedMovies.size(), actualMovies.size());
+
+        for(int i = 0; i < expectedMovies.size(); i++) {
+            Movie expectedMovie = expectedMovies.get(i);
+            Movie actualMovie = actualMovies.get(i);
+
+            assertEquals(expectedMovie.id, actualMovie.id);
+            assertEquals(expectedMovie.posterPath, actualMovie.posterPath);
+            assertEquals(expectedMovie.overview, actualMovie.overview);
+            assertEquals(expectedMovie.releaseDate, actualMovie.releaseDate);
+            assertEquals(expectedMovie.title, actualMovie.title);
+            assertEquals(expectedMovie.voteAverage, actualMovie.voteAverage);
+        }
+    }
+
+    private static void assertDetailsEquals(MovieDetailsEnvelope expected, MovieDetailsEnvelope actual) {
+        assertEquals(expected.id, actual.id);
+
+        MovieTrailerEnvelope expectedVideos = expected.videos;
+        MovieTrailerEnvelope actualVideos = actual.videos;
+        assertEquals(expectedVideos.id, actualVideos.id);
+        assertEquals(expectedVideos.trailers.size(), actualVideos.trailers.size());
+
+        for(int i = 0; i < expectedVideos.trailers.size(); i++) {
+            MovieTrailer expectedTrailer = expectedVideos.trailers.get(i);
+            MovieTrailer actualTrailer = actualVideos.trailers.get(i);
+
+            assertEquals(expectedTrailer.id, actualTrailer.id);
+            assertEquals(expectedTrailer.key, actualTrailer.key);
+            assertEquals(expectedTrailer.name, actualTrailer.name);
+            assertEquals(expectedTrailer.size, actualTrailer.size);
+            assertEquals(expectedTrailer.type, actualTrailer.type);
+        }
+
+        MovieReviewEnvelope expectedReviews = expected.reviews;
+        MovieReviewEnvelope actualReviews = actual.reviews;
+        assertEquals(expectedReviews.id, actualReviews.id);
+        assertEquals(expectedReviews.page, actualReviews.page);
+        assertEquals(expectedReviews.totalResults, actualReviews.totalResults);
+        assertEquals(expectedReviews.totalPages, actualReviews.totalPages);
+        assertEquals(expectedReviews.reviews.size(), actualReviews.reviews.size());
+
+        for(int i = 0; i < expectedReviews.reviews.size(); i++) {
+            MovieReview expectedReview = expectedReviews.reviews.get(i);
+            MovieReview actualReview = actualReviews.reviews.get(i);
+
+            assertEquals(expectedReview.id, actualReview.id);
+            assertEquals(expectedReview.author, actualReview.author);
+            assertEquals(expectedReview.content, actualReview.content);
+            assertEquals(expectedReview.url, actualReview.url);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package software.level.udacity.popularmovies2.ui;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import software.level.udacity.popularmovies2.api.model.Movie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that changes to single favorites keep the loaded favorites in the order of the provider,
+ * newest first and then by descending movie id, and report the item change the view has to make.
+ */
+public class FavoriteChangeTest {
+
+    @Test
+    public void newFavoriteIsInsertedInSortOrder() {
+        List<Movie> favorites = favorites(movie(5, 500), movie(4, 400), movie(3, 300));
+        Movie added = movie(7, 450);
+
+        FavoriteChange change = FavoriteChange.apply(favorites, 7, added, true, 300, 3);
+
+        assertChange(FavoriteChange.INSERT, 1, 1, change);
+        assertSame(added, change.movie);
+        assertIds(favorites, 5, 7, 4, 3);
+    }
+
+    @Test
+    public void tiesOnAddedTimeAreOrderedByMovieId() {
+        List<Movie> favorites = favorites(movie(9, 500), movie(5, 500), movie(2, 500));
+
+        FavoriteChange change = FavoriteChange.apply(favorites, 6, movie(6, 500), true, 500, 2);
+
+        assertChange(FavoriteChange.INSERT, 1, 1, change);
+        assertIds(favorites, 9, 6, 5, 2);
+    }
+
+    @Test
+    public void readdedFavoriteMovesToTheTop() {
+        List<Movie> favorites = favorites(movie(5, 500), movie(4, 400), movie(3, 300));
+
+        FavoriteChange change = FavoriteChange.apply(favorites, 3, movie(3, 600), true, 300, 3);
+
+        assertChange(FavoriteChange.MOVE, 2, 0, change);
+        assertIds(favorites, 3, 5, 4);
+    }
+
+    @Test
+    public void updatedFavoriteInPlaceIsChanged() {
+        List<Movie> favorites = favorites(movie(5, 500), movie(4, 400), movie(3, 300));
+        Movie updated = movie(4, 400);
+
+        FavoriteChange change = FavoriteChange.apply(favorites, 4, updated, true, 300, 3);
+
+        assertChange(FavoriteChange.CHANGE, 1, 1, change);
+        assertSame(updated, favorites.get(1));
+        assertIds(favorites, 5, 4, 3);
+    }
+
+    @Test
+    public void removedFavoriteIsRemoved() {
+        List<Movie> favorites = favorites(movie(5, 500), movie(4, 400), movie(3, 300));
+
+        FavoriteChange change = FavoriteChange.apply(favorites, 4, null, true, 300, 3);
+
+        assertChange(FavoriteChange.REMOVE, 1, 1, change);
+        assertNull(change.movie);
+        assertIds(favorites, 5, 3);
+    }
+
+    @Test
+    public void removingAnUnloadedFavoriteChangesNothing() {
+        List<Movie> favorites = favorites(movie(5, 500), movie(4, 400));
+
+        assertNull(FavoriteChange.apply(favorites, 1, null, false, 400, 4));
+        assertIds(favorites, 5, 4);
+    }
+
+    @Test
+    public void favoriteBeyondLastPageIsLeftToThatPage() {
+        List<Movie> favorites = favorites(movie(5, 500), movie(4, 400));
+
+        // Sorts after the last loaded favorite, on an added time tie as well
+        assertNull(FavoriteChange.apply(favorites, 1, movie(1, 100), false, 400, 4));
+        assertNull(FavoriteChange.apply(favorites, 2, movie(2, 400), false, 400, 4));
+        assertIds(favorites, 5, 4);
+    }
+
+    @Test
+    public void favoriteBeforeLastPageBoundaryIsInserted() {
+        List<Movie> favorites = favorites(movie(5, 500), movie(4, 400));
+
+        FavoriteChange change = FavoriteChange.apply(favorites, 8, movie(8, 400), false, 400, 4);
+
+        assertChange(FavoriteChange.INSERT, 1, 1, change);
+        assertIds(favorites, 5, 8, 4);
+    }
+
+    @Test
+    public void loadedFavoriteMovedBeyondLastPageIsRemoved() {
+        List<Movie> favorites = favorites(movie(5, 500), movie(4, 400), movie(3, 300));
+
+        // The list reads its new position from the page that holds it
+        FavoriteChange change = FavoriteChange.apply(favorites, 5, movie(5, 100), false, 300, 3);
+
+        assertChange(FavoriteChange.REMOVE, 0, 0, change);
+        assertIds(favorites, 4, 3);
+    }
+
+    @Test
+    public void favoriteAfterLastLoadedIsAppendedWhenAllPagesAreLoaded() {
+        List<Movie> favorites = favorites(movie(5, 500), movie(4, 400));
+
+        FavoriteChange change = FavoriteChange.apply(favorites, 1, movie(1, 100), true, 400, 4);
+
+        assertChange(FavoriteChange.INSERT, 2, 2, change);
+        assertIds(favorites, 5, 4, 1);
+    }
+
+    @Test
+    public void firstFavoriteIsInsertedIntoEmptyList() {
+        List<Movie> favorites = new ArrayList<>();
+
+        FavoriteChange change = FavoriteChange.apply(favorites, 1, movie(1, 100), true, 0, 0);
+
+        assertChange(FavoriteChange.INSERT, 0, 0, change);
+        assertIds(favorites, 1);
+    }
+
+    private static Movie movie(int id, long addedAt) {
+        Movie movie = new Movie();
+        movie.id = id;
+        movie.title = "Movie " + id;
+        movie.addedAt = addedAt;
+        return movie;
+    }
+
+    private static List<Movie> favorites(Movie... movies) {
+        List<Movie> favorites = new ArrayList<>();
+        for(Movie movie : movies) {
+            favorites.add(movie);
+        }
+        return favorites;
+    }
+
+    private static void assertChange(int type, int position, int toPosition, FavoriteChange change) {
+        assertEquals(type, change.type);
+        assertEquals(position, change.position);
+        assertEquals(toPosition, change.toPosition);
+    }
+
+    private static void assertIds(List<Movie> favorites, int... ids) {
+        assertEquals(ids.length, favorites.size());
+        for(int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], (int) favorites.get(i).id);
+        }
+    }
+}